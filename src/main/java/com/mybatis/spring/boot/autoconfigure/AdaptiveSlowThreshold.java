@@ -0,0 +1,94 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import com.mybatis.spring.boot.autoconfigure.stats.QuantileSketch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按 statement 自己的耗时分布判断慢 sql：每个 statement 一个 {@link QuantileSketch} 估算最近的 p99，
+ * 耗时超过 p99 * margin 时才打印，主键查询的 50ms 和报表的 50ms 区别对待，只打印偶发的异常值。
+ * 样本不足 minSamples 时不做判断，仍然按 mybatis.print-slow-millis 打印
+ *
+ * @author spafka
+ */
+public class AdaptiveSlowThreshold {
+
+    private static final double QUANTILE = 0.99;
+
+    /**
+     * 数据源 -> statement id -> 耗时分布
+     */
+    private final ConcurrentMap<String, ConcurrentMap<String, QuantileSketch>> dataSources = new ConcurrentHashMap<>();
+
+    private final double margin;
+
+    private final long minSamples;
+
+    private final int halfLife;
+
+    /**
+     * @param margin     超过 p99 的倍数，eg: 1.5
+     * @param minSamples 样本数达到该值后才按分布判断
+     * @param halfLife   每多少次执行分布中的计数减半
+     */
+    public AdaptiveSlowThreshold(double margin, long minSamples, int halfLife) {
+        if (margin < 1) {
+            throw new IllegalArgumentException("margin must not be less than 1: " + margin);
+        }
+        this.margin = margin;
+        this.minSamples = minSamples;
+        this.halfLife = halfLife;
+    }
+
+    /**
+     * 记录本次耗时，和记录之前的 p99 比较
+     *
+     * @return 是否为异常值，样本不足时返回 null
+     */
+    Boolean isOutlier(String dataSource, String statementId, long nanos) {
+        ConcurrentMap<String, QuantileSketch> sketches = dataSources.get(dataSource);
+        if (sketches == null) {
+            sketches = dataSources.computeIfAbsent(dataSource, k -> new ConcurrentHashMap<>());
+        }
+        QuantileSketch sketch = sketches.get(statementId);
+        if (sketch == null) {
+            sketch = sketches.computeIfAbsent(statementId, k -> new QuantileSketch(QUANTILE, halfLife));
+        }
+        Boolean outlier = sketch.getRecords() < minSamples ? null : nanos > sketch.getQuantileNanos() * margin;
+        sketch.record(nanos);
+        return outlier;
+    }
+
+    public void reset() {
+        dataSources.clear();
+    }
+
+    /**
+     * 数据源 -> statement id -> 样本数、p99 和打印阈值(毫秒)
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        dataSources.forEach((dataSource, sketches) -> {
+            Map<String, Object> byId = new TreeMap<>();
+            sketches.forEach((id, sketch) -> {
+                Map<String, Object> stats = new LinkedHashMap<>();
+                long p99 = sketch.getQuantileNanos();
+                stats.put("samples", sketch.getRecords());
+                stats.put("p99Ms", millis(p99));
+                stats.put("thresholdMs", sketch.getRecords() < minSamples ? null : millis((long) (p99 * margin)));
+                byId.put(id, stats);
+            });
+            map.put(dataSource, byId);
+        });
+        return map;
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(TimeUnit.NANOSECONDS.toMicros(nanos) / 10.0) / 100.0;
+    }
+}
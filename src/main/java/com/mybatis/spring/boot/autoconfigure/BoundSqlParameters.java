@@ -0,0 +1,34 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
+
+/**
+ * 取 BoundSql 中 '?' 对应的参数值
+ *
+ * @author spafka
+ * @see org.apache.ibatis.scripting.defaults.DefaultParameterHandler 参考Mybatis 参数处理
+ */
+final class BoundSqlParameters {
+
+    private BoundSqlParameters() {
+    }
+
+    static Object value(Configuration configuration, BoundSql boundSql, ParameterMapping parameterMapping) {
+        String propertyName = parameterMapping.getProperty();
+        Object parameterObject = boundSql.getParameterObject();
+        if (boundSql.hasAdditionalParameter(propertyName)) {
+            return boundSql.getAdditionalParameter(propertyName);
+        }
+        if (parameterObject == null) {
+            return null;
+        }
+        if (configuration.getTypeHandlerRegistry().hasTypeHandler(parameterObject.getClass())) {
+            return parameterObject;
+        }
+        MetaObject metaObject = configuration.newMetaObject(parameterObject);
+        return metaObject.getValue(propertyName);
+    }
+}
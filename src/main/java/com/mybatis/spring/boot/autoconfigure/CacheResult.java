@@ -0,0 +1,28 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标注在 Mapper 接口的查询方法上，开启 mybatis.result-cache.enabled 后缓存该查询的结果。
+ * 命中时只复制 List，其中的对象和缓存是同一个实例，会被多个调用方共享，必须当作不可变对象使用，修改会改掉缓存
+ * <pre>
+ * &#064;CacheResult(ttlMillis = 60000)
+ * List&lt;City&gt; listCities(String province);
+ * </pre>
+ *
+ * @author spafka
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface CacheResult {
+
+    /**
+     * 缓存时间，小于 0 时使用 mybatis.result-cache.ttl-millis
+     */
+    long ttlMillis() default -1;
+}
@@ -0,0 +1,194 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import com.mybatis.spring.boot.autoconfigure.stats.ColumnUsage;
+import org.apache.ibatis.mapping.Discriminator;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.reflection.MetaClass;
+import org.apache.ibatis.session.AutoMappingBehavior;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.type.TypeHandlerRegistry;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 参考 DefaultResultSetHandler 的映射规则，判断 ResultSetMetaData 中的每一列是否会被映射：
+ * ResultMap 中显式映射的列(包括嵌套 ResultMap 加上 columnPrefix 之后的列、discriminator 的列)，
+ * 以及开启自动映射时能找到 setter 的列
+ *
+ * @author spafka
+ */
+final class ColumnUsageAnalyzer {
+
+    private ColumnUsageAnalyzer() {
+    }
+
+    static ColumnUsage analyze(MappedStatement mappedStatement, ResultSetMetaData metaData) throws SQLException {
+        Configuration configuration = mappedStatement.getConfiguration();
+        ResultMap resultMap = mappedStatement.getResultMaps().get(0);
+
+        List<Target> targets = new ArrayList<>();
+        collect(configuration, resultMap, "", resultMap.hasNestedResultMaps(), targets, new HashSet<>());
+        // 简单类型(例如 select count(*) 返回 Long)只取第一列
+        boolean singleColumn = resultMap.getResultMappings().isEmpty()
+                && configuration.getTypeHandlerRegistry().hasTypeHandler(resultMap.getType());
+
+        List<String> fetched = new ArrayList<>();
+        List<String> unused = new ArrayList<>();
+        long unusedBytesPerRow = 0;
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            String column = configuration.isUseColumnLabel() ? metaData.getColumnLabel(i) : metaData.getColumnName(i);
+            fetched.add(column);
+            boolean used = singleColumn ? i == 1 : isMapped(configuration, targets, column.toUpperCase(Locale.ENGLISH));
+            if (!used) {
+                unused.add(column);
+                unusedBytesPerRow += width(metaData.getColumnType(i), metaData.getPrecision(i), metaData.getColumnDisplaySize(i));
+            }
+        }
+        return new ColumnUsage(mappedStatement.getId(), fetched, unused, unusedBytesPerRow);
+    }
+
+    private static void collect(Configuration configuration, ResultMap resultMap, String prefix, boolean nested,
+                                List<Target> targets, Set<String> visited) {
+        if (!visited.add(prefix + ":" + resultMap.getId())) {
+            return;
+        }
+        Target target = new Target(configuration, resultMap, prefix, autoMapping(configuration, resultMap, nested));
+        targets.add(target);
+        for (ResultMapping resultMapping : resultMap.getResultMappings()) {
+            String nestedResultMapId = resultMapping.getNestedResultMapId();
+            if (nestedResultMapId != null && configuration.hasResultMap(nestedResultMapId)) {
+                String columnPrefix = resultMapping.getColumnPrefix() == null ? "" : resultMapping.getColumnPrefix().toUpperCase(Locale.ENGLISH);
+                collect(configuration, configuration.getResultMap(nestedResultMapId), prefix + columnPrefix, true, targets, visited);
+            }
+        }
+        Discriminator discriminator = resultMap.getDiscriminator();
+        if (discriminator != null) {
+            String column = discriminator.getResultMapping().getColumn();
+            if (column != null) {
+                target.mappedColumns.add(column.toUpperCase(Locale.ENGLISH));
+            }
+            for (String caseResultMapId : discriminator.getDiscriminatorMap().values()) {
+                if (configuration.hasResultMap(caseResultMapId)) {
+                    collect(configuration, configuration.getResultMap(caseResultMapId), prefix, nested, targets, visited);
+                }
+            }
+        }
+    }
+
+    /**
+     * 同 DefaultResultSetHandler.shouldApplyAutomaticMappings
+     */
+    private static boolean autoMapping(Configuration configuration, ResultMap resultMap, boolean nested) {
+        if (resultMap.getAutoMapping() != null) {
+            return resultMap.getAutoMapping();
+        }
+        if (nested) {
+            return configuration.getAutoMappingBehavior() == AutoMappingBehavior.FULL;
+        }
+        return configuration.getAutoMappingBehavior() != AutoMappingBehavior.NONE;
+    }
+
+    private static boolean isMapped(Configuration configuration, List<Target> targets, String column) {
+        for (Target target : targets) {
+            if (!column.startsWith(target.prefix)) {
+                continue;
+            }
+            String property = column.substring(target.prefix.length());
+            if (target.mappedColumns.contains(property) || target.autoMapped(configuration, property)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 每行大约占用的字节数，变长类型按声明长度计算并设置上限，只用于排序和粗略比较
+     */
+    static long width(int sqlType, int precision, int displaySize) {
+        switch (sqlType) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+            case Types.TINYINT:
+                return 1;
+            case Types.SMALLINT:
+                return 2;
+            case Types.INTEGER:
+            case Types.REAL:
+                return 4;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return precision > 0 ? precision / 2 + 1 : 8;
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+                return displaySize > 0 ? Math.min(displaySize, 255) : 255;
+            case Types.LONGVARCHAR:
+            case Types.LONGNVARCHAR:
+            case Types.CLOB:
+            case Types.NCLOB:
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return displaySize > 0 ? Math.min(displaySize, 1024) : 1024;
+            default:
+                return 8;
+        }
+    }
+
+    /**
+     * 一个 ResultMap 及其列前缀
+     */
+    private static final class Target {
+
+        private final String prefix;
+
+        private final Set<String> mappedColumns;
+
+        private final Set<String> mappedProperties;
+
+        private final boolean autoMapping;
+
+        private final boolean mapType;
+
+        private final MetaClass metaClass;
+
+        Target(Configuration configuration, ResultMap resultMap, String prefix, boolean autoMapping) {
+            this.prefix = prefix;
+            this.mappedColumns = new HashSet<>(resultMap.getMappedColumns());
+            this.mappedProperties = resultMap.getMappedProperties();
+            this.autoMapping = autoMapping;
+            this.mapType = Map.class.isAssignableFrom(resultMap.getType());
+            this.metaClass = autoMapping && !mapType ? MetaClass.forClass(resultMap.getType(), configuration.getReflectorFactory()) : null;
+        }
+
+        /**
+         * 同 DefaultResultSetHandler.createAutomaticMappings
+         */
+        boolean autoMapped(Configuration configuration, String column) {
+            if (!autoMapping) {
+                return false;
+            }
+            if (mapType) {
+                return true;
+            }
+            String property = metaClass.findProperty(column, configuration.isMapUnderscoreToCamelCase());
+            if (property == null || !metaClass.hasSetter(property) || mappedProperties.contains(property)) {
+                return false;
+            }
+            TypeHandlerRegistry typeHandlerRegistry = configuration.getTypeHandlerRegistry();
+            return typeHandlerRegistry.hasTypeHandler(metaClass.getSetterType(property));
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import com.mybatis.spring.boot.autoconfigure.cache.TransactionalCacheBuffer;
+import com.mybatis.spring.boot.autoconfigure.cache.TtlCache;
+import com.mybatis.spring.boot.autoconfigure.stats.CacheStats;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.mapping.MappedStatement;
+
+import java.util.AbstractMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * PageHelper count 查询(statement id 以 _COUNT 结尾)的结果缓存，所有数据源共用，
+ * key 中包含数据源、规整过空白的 count sql 以及参数值。ttl 可以按 namespace 配置，
+ * 同一 namespace 执行 insert / update / delete 时失效。查询结果在事务提交后才放入缓存，回滚时丢弃
+ *
+ * @author spafka
+ */
+public class CountCache {
+
+    private final TtlCache<CacheKey, List<Object>> cache;
+
+    private final TransactionalCacheBuffer<CacheKey, List<Object>> buffer;
+
+    private final CacheStats stats = new CacheStats();
+
+    private final String countSuffix;
+
+    private final long defaultTtlMillis;
+
+    private final NamespaceTrie<Long> namespaceTtls = new NamespaceTrie<>();
+
+    private final ConcurrentMap<MappedStatement, Long> ttlCache = new ConcurrentHashMap<>();
+
+    /**
+     * @param namespaceTtls pattern:ttlMillis，ttl 为 0 时不缓存，pattern 语法见 {@link NamespaceTrie}
+     */
+    public CountCache(String countSuffix, long defaultTtlMillis, long maxEntries, List<String> namespaceTtls) {
+        this.cache = new TtlCache<>(maxEntries, 0);
+        this.buffer = new TransactionalCacheBuffer<>(cache);
+        this.countSuffix = countSuffix;
+        this.defaultTtlMillis = defaultTtlMillis;
+        for (String namespaceTtl : namespaceTtls) {
+            Map.Entry<String, Long> entry = parse(namespaceTtl);
+            this.namespaceTtls.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    static Map.Entry<String, Long> parse(String value) {
+        String[] parts = value.trim().split(":");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("namespace ttl must be pattern:ttlMillis, got " + value);
+        }
+        return new AbstractMap.SimpleImmutableEntry<>(parts[0].trim(), Long.parseLong(parts[1].trim()));
+    }
+
+    boolean isCountStatement(MappedStatement mappedStatement) {
+        return mappedStatement.getId().endsWith(countSuffix);
+    }
+
+    /**
+     * 按去掉 _COUNT 后缀的 statement id 匹配，结果按 MappedStatement 缓存
+     */
+    long ttlMillis(MappedStatement mappedStatement) {
+        Long ttl = ttlCache.get(mappedStatement);
+        if (ttl == null) {
+            String id = mappedStatement.getId();
+            ttl = namespaceTtls.find(id.substring(0, id.length() - countSuffix.length()));
+            if (ttl == null) {
+                ttl = defaultTtlMillis;
+            }
+            ttlCache.put(mappedStatement, ttl);
+        }
+        return ttl;
+    }
+
+    TtlCache<CacheKey, List<Object>> getCache() {
+        return cache;
+    }
+
+    TransactionalCacheBuffer<CacheKey, List<Object>> getBuffer() {
+        return buffer;
+    }
+
+    CacheStats getStats() {
+        return stats;
+    }
+
+    public void reset() {
+        cache.clear();
+        stats.reset();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("entries", cache.size());
+        map.put("evictions", cache.getEvictions());
+        map.put("pendingTransactions", buffer.getPendingTransactions());
+        map.put("statements", stats.snapshot());
+        return map;
+    }
+
+    /**
+     * namespace 即 statement id 最后一个 '.' 之前的部分，加上数据源区分
+     */
+    static String namespace(String dataSource, String statementId) {
+        int index = statementId.lastIndexOf('.');
+        return dataSource + ":" + (index < 0 ? "" : statementId.substring(0, index));
+    }
+
+    /**
+     * 把连续空白规整为一个空格，格式不同但内容相同的 sql 使用同一个 key
+     */
+    static String normalize(String sql) {
+        StringBuilder sb = new StringBuilder(sql.length());
+        boolean whitespace = false;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                whitespace = sb.length() > 0;
+            } else {
+                if (whitespace) {
+                    sb.append(' ');
+                    whitespace = false;
+                }
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,124 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import com.mybatis.spring.boot.autoconfigure.stats.CacheStats;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.*;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * count 查询结果缓存。在 StatementHandler 层拦截，不依赖和 PageHelper 等 Executor 插件的先后顺序：
+ * 命中时不执行已经准备好的 Statement，直接返回缓存的结果；insert / update / delete 时让同一 namespace 的缓存失效。
+ * 同时拦截 Executor 的 commit / rollback / close，查询结果在提交后才放入缓存，见 {@link com.mybatis.spring.boot.autoconfigure.cache.TransactionalCacheBuffer}
+ *
+ * @author spafka
+ */
+@Intercepts({@Signature(type = StatementHandler.class, method = "query", args = {Statement.class, ResultHandler.class}),
+        @Signature(type = StatementHandler.class, method = "update", args = {Statement.class}),
+        @Signature(type = StatementHandler.class, method = "batch", args = {Statement.class}),
+        @Signature(type = Executor.class, method = "commit", args = {boolean.class}),
+        @Signature(type = Executor.class, method = "rollback", args = {boolean.class}),
+        @Signature(type = Executor.class, method = "close", args = {boolean.class})})
+public class CountCacheInterceptor implements Interceptor {
+
+    private final CountCache countCache;
+
+    private final String dataSource;
+
+    public CountCacheInterceptor(CountCache countCache, String dataSource) {
+        this.countCache = countCache;
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        if (invocation.getTarget() instanceof Executor) {
+            return countCache.getBuffer().complete(invocation);
+        }
+        StatementHandler statementHandler = (StatementHandler) invocation.getTarget();
+        MappedStatement mappedStatement = StatementHandlers.mappedStatement(statementHandler);
+        Executor executor = StatementHandlers.executor(statementHandler);
+        if (mappedStatement == null || executor == null) {
+            return invocation.proceed();
+        }
+        Object transaction = executor.getTransaction();
+        String namespace = CountCache.namespace(dataSource, mappedStatement.getId());
+        if (!"query".equals(invocation.getMethod().getName())) {
+            if (!isWrite(mappedStatement.getSqlCommandType())) {
+                return invocation.proceed();
+            }
+            // 执行前后都失效，执行期间开始的 count 查询读到的结果也不会写入；提交时再失效一次
+            countCache.getBuffer().write(transaction, namespace);
+            try {
+                return invocation.proceed();
+            } finally {
+                countCache.getCache().invalidate(namespace);
+            }
+        }
+        if (!countCache.isCountStatement(mappedStatement)) {
+            return invocation.proceed();
+        }
+        long ttlMillis = countCache.ttlMillis(mappedStatement);
+        if (ttlMillis <= 0 || countCache.getBuffer().isWritten(transaction, namespace)) {
+            // 本事务写过的 namespace，缓存中的结果不包含未提交的修改
+            return invocation.proceed();
+        }
+
+        CacheKey key = key(mappedStatement, statementHandler.getBoundSql());
+        CacheStats.Counts counts = countCache.getStats().counts(dataSource, mappedStatement.getId());
+        List<Object> cached = countCache.getCache().get(key);
+        if (cached != null) {
+            counts.hit();
+            return new ArrayList<>(cached);
+        }
+        counts.miss();
+        long version = countCache.getCache().version(namespace);
+        Object result = invocation.proceed();
+        if (result instanceof List) {
+            countCache.getBuffer().put(transaction, key, Collections.unmodifiableList(new ArrayList<>((List<?>) result)), namespace, version, ttlMillis, 1);
+        }
+        return result;
+    }
+
+    private static boolean isWrite(SqlCommandType sqlCommandType) {
+        return sqlCommandType == SqlCommandType.INSERT || sqlCommandType == SqlCommandType.UPDATE
+                || sqlCommandType == SqlCommandType.DELETE;
+    }
+
+    private CacheKey key(MappedStatement mappedStatement, BoundSql boundSql) {
+        CacheKey key = new CacheKey();
+        key.update(dataSource);
+        key.update(CountCache.normalize(boundSql.getSql()));
+        List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
+        if (parameterMappings != null) {
+            for (ParameterMapping parameterMapping : parameterMappings) {
+                if (parameterMapping.getMode() != ParameterMode.OUT) {
+                    key.update(BoundSqlParameters.value(mappedStatement.getConfiguration(), boundSql, parameterMapping));
+                }
+            }
+        }
+        return key;
+    }
+
+    @Override
+    public Object plugin(Object target) {
+        return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+
+    }
+}
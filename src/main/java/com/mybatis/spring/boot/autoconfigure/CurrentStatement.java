@@ -0,0 +1,35 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+/**
+ * 当前线程正在执行的 statement id，供拿不到 MappedStatement 的地方(例如 TypeHandler)使用
+ *
+ * @author spafka
+ */
+public final class CurrentStatement {
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private CurrentStatement() {
+    }
+
+    public static String get() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @return 之前的 statement id，嵌套查询结束后需要用 {@link #restore(String)} 还原
+     */
+    static String enter(String statementId) {
+        String previous = CURRENT.get();
+        CURRENT.set(statementId);
+        return previous;
+    }
+
+    static void restore(String previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import com.mybatis.spring.boot.autoconfigure.cache.LruMap;
+import com.mybatis.spring.boot.autoconfigure.stats.DeepOffsetStats;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.*;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * 深分页检测：不含 LIMIT / OFFSET 的 sql 直接跳过，其他 sql 模板(包括 PageHelper 追加的 LIMIT ?, ?)只用 druid 解析一次，
+ * 执行前取出渲染后的 offset，超过阈值时按 statement 和请求入口记录，第一次出现时给出 keyset 分页的写法
+ *
+ * @author spafka
+ */
+@Intercepts({@Signature(type = StatementHandler.class, method = "query", args = {Statement.class, ResultHandler.class}),
+        @Signature(type = StatementHandler.class, method = "queryCursor", args = {Statement.class})})
+@Slf4j
+public class DeepOffsetInterceptor implements Interceptor {
+
+    /**
+     * 缓存的 sql 模板个数上限，超过后淘汰最久没有执行的模板
+     */
+    private static final int MAX_TEMPLATES = 4096;
+
+    private final DeepOffsetStats stats;
+
+    private final String dataSource;
+
+    private final long threshold;
+
+    private final String dbType;
+
+    /**
+     * sql 模板 -> 分页子句，不含分页子句的模板缓存为 {@link LimitClause#NONE}
+     */
+    private final Map<String, LimitClause> templates = Collections.synchronizedMap(new LruMap<>(MAX_TEMPLATES));
+
+    public DeepOffsetInterceptor(DeepOffsetStats stats, String dataSource, long threshold, String dbType) {
+        this.stats = stats;
+        this.dataSource = dataSource;
+        this.threshold = threshold;
+        this.dbType = dbType;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        StatementHandler statementHandler = (StatementHandler) invocation.getTarget();
+        BoundSql boundSql = statementHandler.getBoundSql();
+        LimitClause limitClause = limitClause(boundSql.getSql());
+        if (limitClause != LimitClause.NONE) {
+            MappedStatement mappedStatement = StatementHandlers.mappedStatement(statementHandler);
+            if (mappedStatement != null) {
+                long offset = limitClause.offset(mappedStatement.getConfiguration(), boundSql);
+                // offset 为负数表示取不到参数值
+                if (offset >= 0 && offset >= threshold) {
+                    String endpoint = SqlRequestSummary.currentEndpoint();
+                    if (stats.record(dataSource, mappedStatement.getId(), offset, endpoint, limitClause.getKeysetHint())) {
+                        log.warn("[{}] {} pages with offset {} (endpoint {}), consider keyset pagination: {}",
+                                dataSource, mappedStatement.getId(), offset, endpoint == null ? DeepOffsetStats.NO_ENDPOINT : endpoint,
+                                limitClause.getKeysetHint());
+                    }
+                }
+            }
+        }
+        return invocation.proceed();
+    }
+
+    private LimitClause limitClause(String sql) {
+        if (!containsKeyword(sql, "limit") && !containsKeyword(sql, "offset")) {
+            return LimitClause.NONE;
+        }
+        LimitClause limitClause = templates.get(sql);
+        if (limitClause == null) {
+            // 在锁外解析，并发时同一个模板可能解析多次
+            limitClause = parse(sql);
+            templates.put(sql, limitClause);
+        }
+        return limitClause;
+    }
+
+    /**
+     * 忽略大小写查找，分页子句一般在末尾，从后往前找
+     */
+    private static boolean containsKeyword(String sql, String keyword) {
+        for (int i = sql.length() - keyword.length(); i >= 0; i--) {
+            if (sql.regionMatches(true, i, keyword, 0, keyword.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private LimitClause parse(String sql) {
+        try {
+            return LimitClause.parse(sql, dbType);
+        } catch (RuntimeException e) {
+            log.debug("parse limit of sql failed: {}", sql, e);
+            return LimitClause.NONE;
+        }
+    }
+
+    @Override
+    public Object plugin(Object target) {
+        return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+
+    }
+}
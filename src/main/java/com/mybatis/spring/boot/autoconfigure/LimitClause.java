@@ -0,0 +1,134 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import com.alibaba.druid.sql.SQLUtils;
+import com.alibaba.druid.sql.ast.SQLExpr;
+import com.alibaba.druid.sql.ast.SQLLimit;
+import com.alibaba.druid.sql.ast.SQLOrderBy;
+import com.alibaba.druid.sql.ast.SQLOrderingSpecification;
+import com.alibaba.druid.sql.ast.SQLStatement;
+import com.alibaba.druid.sql.ast.expr.SQLIntegerExpr;
+import com.alibaba.druid.sql.ast.expr.SQLVariantRefExpr;
+import com.alibaba.druid.sql.ast.statement.SQLSelect;
+import com.alibaba.druid.sql.ast.statement.SQLSelectOrderByItem;
+import com.alibaba.druid.sql.ast.statement.SQLSelectQuery;
+import com.alibaba.druid.sql.ast.statement.SQLSelectQueryBlock;
+import com.alibaba.druid.sql.ast.statement.SQLSelectStatement;
+import com.alibaba.druid.sql.ast.statement.SQLUnionQuery;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.session.Configuration;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 用 druid 解析一次 sql 模板得到的最外层 LIMIT 的 offset 位置：字面量，或者第几个 '?'。
+ * 同时根据 ORDER BY 给出改成 keyset 分页的写法
+ *
+ * @author spafka
+ */
+final class LimitClause {
+
+    /**
+     * 不是查询、没有 offset 或者解析失败
+     */
+    static final LimitClause NONE = new LimitClause(-1, 0, null);
+
+    /**
+     * offset 对应的 '?' 下标，-1 表示字面量
+     */
+    private final int offsetParameter;
+
+    private final long offsetLiteral;
+
+    private final String keysetHint;
+
+    private LimitClause(int offsetParameter, long offsetLiteral, String keysetHint) {
+        this.offsetParameter = offsetParameter;
+        this.offsetLiteral = offsetLiteral;
+        this.keysetHint = keysetHint;
+    }
+
+    static LimitClause parse(String sql, String dbType) {
+        List<SQLStatement> statements = SQLUtils.parseStatements(sql, dbType);
+        if (statements.size() != 1 || !(statements.get(0) instanceof SQLSelectStatement)) {
+            return NONE;
+        }
+        SQLSelect select = ((SQLSelectStatement) statements.get(0)).getSelect();
+        SQLSelectQuery query = select.getQuery();
+        SQLLimit limit = select.getLimit();
+        SQLOrderBy orderBy = select.getOrderBy();
+        if (query instanceof SQLSelectQueryBlock) {
+            SQLSelectQueryBlock queryBlock = (SQLSelectQueryBlock) query;
+            limit = limit == null ? queryBlock.getLimit() : limit;
+            orderBy = orderBy == null ? queryBlock.getOrderBy() : orderBy;
+        } else if (query instanceof SQLUnionQuery) {
+            SQLUnionQuery unionQuery = (SQLUnionQuery) query;
+            limit = limit == null ? unionQuery.getLimit() : limit;
+            orderBy = orderBy == null ? unionQuery.getOrderBy() : orderBy;
+        }
+        if (limit == null || limit.getOffset() == null) {
+            return NONE;
+        }
+        SQLExpr offset = limit.getOffset();
+        String keysetHint = keysetHint(orderBy, limit.getRowCount());
+        if (offset instanceof SQLVariantRefExpr) {
+            return new LimitClause(((SQLVariantRefExpr) offset).getIndex(), 0, keysetHint);
+        }
+        if (offset instanceof SQLIntegerExpr) {
+            return new LimitClause(-1, ((SQLIntegerExpr) offset).getNumber().longValue(), keysetHint);
+        }
+        return NONE;
+    }
+
+    /**
+     * eg: WHERE (create_time, id) < (?, ?) ORDER BY create_time DESC, id DESC LIMIT ?
+     */
+    private static String keysetHint(SQLOrderBy orderBy, SQLExpr rowCount) {
+        if (orderBy == null || orderBy.getItems().isEmpty()) {
+            return "no ORDER BY, sort by a unique key (eg primary key) and seek with WHERE key > last value";
+        }
+        List<SQLSelectOrderByItem> items = orderBy.getItems();
+        boolean descending = items.get(0).getType() == SQLOrderingSpecification.DESC;
+        for (SQLSelectOrderByItem item : items) {
+            if ((item.getType() == SQLOrderingSpecification.DESC) != descending) {
+                return "ORDER BY mixes ASC and DESC, seek with an expanded condition eg a > ? OR (a = ? AND b < ?)";
+            }
+        }
+        String columns = items.stream().map(item -> SQLUtils.toSQLString(item.getExpr())).collect(Collectors.joining(", "));
+        String values = items.stream().map(item -> "?").collect(Collectors.joining(", "));
+        String condition = items.size() == 1 ? columns + (descending ? " < " : " > ") + values
+                : "(" + columns + ")" + (descending ? " < " : " > ") + "(" + values + ")";
+        return "WHERE " + condition + " ORDER BY " + SQLUtils.toSQLString(orderBy).replaceFirst("(?i)^\\s*ORDER BY\\s+", "")
+                + " LIMIT " + (rowCount == null ? "?" : SQLUtils.toSQLString(rowCount));
+    }
+
+    /**
+     * 渲染后的 offset，取不到时返回 -1
+     */
+    long offset(Configuration configuration, BoundSql boundSql) {
+        if (offsetParameter < 0) {
+            return offsetLiteral;
+        }
+        List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
+        if (parameterMappings == null || offsetParameter >= parameterMappings.size()) {
+            return -1;
+        }
+        Object value = BoundSqlParameters.value(configuration, boundSql, parameterMappings.get(offsetParameter));
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Long.parseLong(((String) value).trim());
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    String getKeysetHint() {
+        return keysetHint;
+    }
+}
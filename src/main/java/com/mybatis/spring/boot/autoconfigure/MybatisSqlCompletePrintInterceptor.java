@@ -14,43 +14,90 @@
 package com.mybatis.spring.boot.autoconfigure;
 
 
+import com.mybatis.spring.boot.autoconfigure.sink.SqlFileSink;
+import com.mybatis.spring.boot.autoconfigure.sql.ChunkedWriter;
+import com.mybatis.spring.boot.autoconfigure.stats.ResultSizeEstimator;
+import com.mybatis.spring.boot.autoconfigure.stats.SqlStatsRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.statement.StatementHandler;
 import org.apache.ibatis.mapping.BoundSql;
-import org.apache.ibatis.mapping.ParameterMapping;
-import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.plugin.*;
-import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.scripting.defaults.DefaultParameterHandler;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultHandler;
-import org.apache.ibatis.type.TypeHandlerRegistry;
 import org.springframework.core.Ordered;
 import org.springframework.util.ReflectionUtils;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Field;
 import java.sql.Statement;
-import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
-import java.util.Date;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 @Intercepts({@Signature(type = StatementHandler.class, method = "query", args = {Statement.class, ResultHandler.class}),
         @Signature(type = StatementHandler.class, method = "update", args = {Statement.class}),
-        @Signature(type = StatementHandler.class, method = "batch", args = {Statement.class})})
+        @Signature(type = StatementHandler.class, method = "batch", args = {Statement.class}),
+        @Signature(type = StatementHandler.class, method = "queryCursor", args = {Statement.class})})
 @Slf4j
 @SuppressWarnings("PMD")
 public class MybatisSqlCompletePrintInterceptor implements Interceptor, Ordered {
 
     public static final String DEFAULT_DATETIME_FORMAT = "yyyy-MM-dd HH:mm:ss";
 
-    private static final DateTimeFormatter ddf = DateTimeFormatter.ofPattern(DEFAULT_DATETIME_FORMAT);
+    private static final String PRINT_PATTERN = "\n------------------------------------\n\n{}\n\n------------------------------------ {}\n";
 
-    private Configuration configuration = null;
+    /**
+     * 每个 SqlSessionFactory 一个拦截器，构造时传入；通过 mybatis-config.xml 配置时为空，第一次执行时再获取
+     */
+    private volatile Configuration configuration;
+
+    /**
+     * 数据源名称，打印在每条日志中，多数据源时用来区分
+     */
+    private volatile String dataSource;
+
+    /**
+     * 打印开关、慢 sql 阈值、采样、statement 过滤，可以在运行时修改；关闭时只为请求汇总({@link SqlRequestSummary})记录耗时
+     */
+    private final PrintControl printControl;
+
+    /**
+     * 查询结果内存估算，未开启 mybatis.result-size.enabled 时为空
+     */
+    private ResultSizeEstimator resultSizeEstimator;
+
+    /**
+     * 估算结果按 statement 汇总到这里，未开启 mybatis.stats.enabled 时为空
+     */
+    private SqlStatsRegistry statsRegistry;
+
+    private PrintFormat printFormat = PrintFormat.BUILTIN;
+
+    /**
+     * 长 IN 列表、多行 VALUES 前后各打印的元素个数，0 表示全部打印，见 {@link SqlRenderer}
+     */
+    private int printListKeep;
+
+    /**
+     * 一条日志最多输出的 sql 字符数，更长的 sql 分成多条日志
+     */
+    private int printChunkSize = 64 * 1024;
+
+    /**
+     * 开启 mybatis.sql-file.enabled 时 sql 写入单独的文件，不再输出到日志
+     */
+    private SqlFileSink sqlFileSink;
+
+    /**
+     * 按 statement 自己的 p99 判断慢 sql，未开启 mybatis.print-adaptive.enabled 时为空
+     */
+    private AdaptiveSlowThreshold adaptiveSlowThreshold;
 
     static boolean druidExists = false;
 
@@ -63,46 +110,225 @@ public class MybatisSqlCompletePrintInterceptor implements Interceptor, Ordered
         }
     }
 
+    /**
+     * 供 mybatis-config.xml 中的 plugins 配置使用
+     */
+    public MybatisSqlCompletePrintInterceptor() {
+        this.printControl = new PrintControl(new PrintSettings(true, 0, 1, null, null));
+    }
+
+    public MybatisSqlCompletePrintInterceptor(Configuration configuration, String dataSource, PrintControl printControl) {
+        this.configuration = configuration;
+        this.dataSource = dataSource;
+        this.printControl = printControl;
+    }
+
+    public void setResultSizeEstimator(ResultSizeEstimator resultSizeEstimator) {
+        this.resultSizeEstimator = resultSizeEstimator;
+    }
+
+    public void setStatsRegistry(SqlStatsRegistry statsRegistry) {
+        this.statsRegistry = statsRegistry;
+    }
+
+    public void setPrintFormat(PrintFormat printFormat) {
+        this.printFormat = printFormat;
+    }
+
+    public void setPrintListKeep(int printListKeep) {
+        this.printListKeep = printListKeep;
+    }
+
+    public void setPrintChunkSize(int printChunkSize) {
+        this.printChunkSize = printChunkSize;
+    }
+
+    public void setSqlFileSink(SqlFileSink sqlFileSink) {
+        this.sqlFileSink = sqlFileSink;
+    }
+
+    public void setAdaptiveSlowThreshold(AdaptiveSlowThreshold adaptiveSlowThreshold) {
+        this.adaptiveSlowThreshold = adaptiveSlowThreshold;
+    }
+
     @Override
     public Object intercept(Invocation invocation) throws Throwable {
-        Object target = invocation.getTarget();
-        long startTime = System.currentTimeMillis();
+        StatementHandler statementHandler = (StatementHandler) invocation.getTarget();
+        long startTime = System.nanoTime();
+        Object result = null;
         try {
-            return invocation.proceed();
+            result = invocation.proceed();
         } finally {
-            if (log.isDebugEnabled()) {
-                long endTime = System.currentTimeMillis();
-                long sqlCost = endTime - startTime;
+            if (!(result instanceof Cursor)) {
+                afterExecute(statementHandler, result, startTime);
+            }
+        }
+        if (result instanceof Cursor) {
+            // 游标的耗时分散在遍历过程中，关闭时再统计和打印
+            return new TimedCursor<>((Cursor<?>) result, startTime, cursor -> afterClose(statementHandler, cursor));
+        }
+        return result;
+    }
+
+    private void afterExecute(StatementHandler statementHandler, Object result, long startTime) throws IllegalAccessException {
+        long sqlCostNanos = System.nanoTime() - startTime;
+        long sqlCost = TimeUnit.NANOSECONDS.toMillis(sqlCostNanos);
+        // 反射获取，只取一次
+        MappedStatement mappedStatement = StatementHandlers.mappedStatement(statementHandler);
+        if (SqlRequestSummary.current() != null) {
+            SqlRequestSummary.record(mappedStatement == null ? null : mappedStatement.getId(), sqlCostNanos, rows(result));
+        }
+        long resultBytes = estimateResultBytes(mappedStatement, result);
+        // 每次执行都要计入分布，所以在打印开关、日志级别之前记录
+        Boolean outlier = adaptiveOutlier(mappedStatement, sqlCostNanos);
+        PrintSettings settings = printControl.getSettings();
+        if (settings.isEnabled() && isPrintable() && shouldPrint(settings, mappedStatement, sqlCostNanos, outlier)) {
+            if (resultBytes < 0) {
+                print(statementHandler, tag() + "cost " + sqlCost + "ms");
+            } else {
+                print(statementHandler, tag() + "cost " + sqlCost + "ms, " + rows(result) + " rows ~"
+                        + ResultSizeEstimator.format(resultBytes));
+            }
+        }
+    }
 
-                StatementHandler statementHandler = (StatementHandler) target;
-                BoundSql boundSql = statementHandler.getBoundSql();
+    /**
+     * 估算查询结果占用的内存，未开启或者不是查询时返回 -1
+     */
+    private long estimateResultBytes(MappedStatement mappedStatement, Object result) {
+        ResultSizeEstimator estimator = this.resultSizeEstimator;
+        if (estimator == null || !(result instanceof List)) {
+            return -1;
+        }
+        long bytes = estimator.estimate((List<?>) result);
+        SqlStatsRegistry registry = this.statsRegistry;
+        if (registry != null && mappedStatement != null) {
+            registry.stats(dataSource, mappedStatement).recordResultBytes(bytes);
+        }
+        return bytes;
+    }
 
+    private void afterClose(StatementHandler statementHandler, TimedCursor<?> cursor) {
+        long openCost = TimeUnit.NANOSECONDS.toMillis(cursor.getOpenNanos());
+        MappedStatement mappedStatement = StatementHandlers.mappedStatement(statementHandler);
+        if (SqlRequestSummary.current() != null) {
+            SqlRequestSummary.record(mappedStatement == null ? null : mappedStatement.getId(), cursor.getStreamingNanos(), cursor.getRows());
+        }
+        Boolean outlier = adaptiveOutlier(mappedStatement, cursor.getOpenNanos());
+        PrintSettings settings = printControl.getSettings();
+        if (settings.isEnabled() && isPrintable() && shouldPrint(settings, mappedStatement, cursor.getOpenNanos(), outlier)) {
+            try {
+                print(statementHandler, tag() + "cursor first row "
+                        + (cursor.getFirstRowNanos() < 0 ? "-" : TimeUnit.NANOSECONDS.toMillis(cursor.getFirstRowNanos()))
+                        + "ms, streamed " + cursor.getRows()
+                        + " rows in " + TimeUnit.NANOSECONDS.toMillis(cursor.getStreamingNanos())
+                        + "ms, open " + openCost + "ms");
+            } catch (IllegalAccessException e) {
+                log.warn("print cursor sql failed", e);
+            }
+        }
+    }
 
-                if (configuration == null) {
-                    final DefaultParameterHandler parameterHandler = (DefaultParameterHandler) statementHandler.getParameterHandler();
-                    Field configurationField = ReflectionUtils.findField(parameterHandler.getClass(), "configuration");
-                    ReflectionUtils.makeAccessible(configurationField);
-                    this.configuration = (Configuration) configurationField.get(parameterHandler);
+    /**
+     * 输出 sql 和 footer；sql 边替换参数边写入日志，超过 printChunkSize 时分成多条日志，不生成完整的 sql 字符串
+     */
+    private void print(StatementHandler statementHandler, String footer) throws IllegalAccessException {
+        BoundSql boundSql = statementHandler.getBoundSql();
 
+        Configuration configuration = this.configuration;
+        if (configuration == null) {
+            configuration = lookupConfiguration(statementHandler);
+        }
 
+        //替换参数格式化Sql语句
+        SqlRenderer renderer = new SqlRenderer(configuration, boundSql, printListKeep);
+        SqlFileSink sink = this.sqlFileSink;
+        if (sink != null) {
+            if (printFormat == PrintFormat.DRUID) {
+                sink.offer(footer, out -> out.append(com.alibaba.druid.sql.SQLUtils.formatMySql(renderer.render(false))));
+            } else {
+                sink.offer(footer, out -> renderer.render(out, printFormat == PrintFormat.BUILTIN));
+            }
+            return;
+        }
+        if (printFormat == PrintFormat.DRUID) {
+            // druid 需要完整的 sql
+            log.info(PRINT_PATTERN, com.alibaba.druid.sql.SQLUtils.formatMySql(renderer.render(false)), footer);
+            return;
+        }
+        try (LogWriter writer = new LogWriter(printChunkSize, footer)) {
+            renderer.render(writer, printFormat == PrintFormat.BUILTIN);
+        } catch (IOException e) {
+            // LogWriter 不会抛出 IOException
+            throw new UncheckedIOException(e);
+        }
+    }
 
-                }
+    /**
+     * 写入文件时不受日志级别限制
+     */
+    private boolean isPrintable() {
+        return sqlFileSink != null || log.isDebugEnabled();
+    }
 
+    /**
+     * 计入 statement 的耗时分布，未开启 mybatis.print-adaptive.enabled 或者样本不足时返回 null
+     */
+    private Boolean adaptiveOutlier(MappedStatement mappedStatement, long sqlCostNanos) {
+        AdaptiveSlowThreshold adaptive = this.adaptiveSlowThreshold;
+        if (adaptive == null) {
+            return null;
+        }
+        return mappedStatement == null ? null : adaptive.isOutlier(dataSource, mappedStatement.getId(), sqlCostNanos);
+    }
 
-                //替换参数格式化Sql语句，去除换行符
-                String sql = formatSql(boundSql, configuration);
+    /**
+     * @param outlier {@link #adaptiveOutlier} 的结果，为 false 时不打印
+     */
+    private boolean shouldPrint(PrintSettings settings, MappedStatement mappedStatement, long sqlCostNanos, Boolean outlier) {
+        if (Boolean.FALSE.equals(outlier)) {
+            return false;
+        }
+        if (!settings.isSlow(TimeUnit.NANOSECONDS.toMillis(sqlCostNanos)) || !settings.sampled()) {
+            return false;
+        }
+        if (settings.hasStatementFilter()) {
+            return settings.matches(mappedStatement);
+        }
+        return true;
+    }
 
-                if (druidExists) {
-                    sql = com.alibaba.druid.sql.SQLUtils.formatMySql(sql);
-                }
+    /**
+     * footer 开头的数据源标记，eg: "[dataSource] "；通过 mybatis-config.xml 配置且还不知道数据源时为空
+     */
+    private String tag() {
+        String dataSource = this.dataSource;
+        return dataSource == null ? "" : "[" + dataSource + "] ";
+    }
 
-                log.info("\n------------------------------------\n\n{}\n\n------------------------------------ cost {}ms\n",
-                        sql
-                        , sqlCost
-                );
+    /**
+     * query 返回结果集，update 返回影响行数，batch 没有返回值
+     */
+    private static long rows(Object result) {
+        if (result instanceof List) {
+            return ((List<?>) result).size();
+        }
+        if (result instanceof Integer) {
+            return (Integer) result;
+        }
+        return 0;
+    }
 
-            }
+    private Configuration lookupConfiguration(StatementHandler statementHandler) throws IllegalAccessException {
+        final DefaultParameterHandler parameterHandler = (DefaultParameterHandler) statementHandler.getParameterHandler();
+        Field configurationField = ReflectionUtils.findField(parameterHandler.getClass(), "configuration");
+        ReflectionUtils.makeAccessible(configurationField);
+        Configuration configuration = (Configuration) configurationField.get(parameterHandler);
+        if (configuration.getEnvironment() != null) {
+            this.dataSource = configuration.getEnvironment().getId();
         }
+        this.configuration = configuration;
+        return configuration;
     }
 
     @Override
@@ -116,70 +342,45 @@ public class MybatisSqlCompletePrintInterceptor implements Interceptor, Ordered
     }
 
     /**
-     * 获取完整的sql实体的信息
-     *
-     * @param boundSql
-     * @return
+     * 不超过一块的 sql 和原来一样输出为一条日志；更长的 sql 每块一条日志，每块都以 [sql#id part n] 开头，
+     * 并发输出时可以按 id 拼回同一条 sql，最后一块带上 footer
      */
-    private String formatSql(BoundSql boundSql, Configuration configuration) {
-        String sql = boundSql.getSql();
-        List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
-        Object parameterObject = boundSql.getParameterObject();
-        // 输入sql字符串空判断
-        if (sql == null || sql.length() == 0) {
-            return "";
-        }
+    private static final class LogWriter extends ChunkedWriter {
 
-        if (configuration == null) {
-            return "";
-        }
+        private static final AtomicLong SEQUENCE = new AtomicLong();
+
+        private final String footer;
 
-        TypeHandlerRegistry typeHandlerRegistry = configuration.getTypeHandlerRegistry();
+        private int chunks;
 
         /**
-         * @see org.apache.ibatis.scripting.defaults.DefaultParameterHandler 参考Mybatis 参数处理
+         * 分成多块时才分配
          */
-        if (parameterMappings != null) {
-            for (ParameterMapping parameterMapping : parameterMappings) {
-                if (parameterMapping.getMode() != ParameterMode.OUT) {
-                    Object value;
-                    String propertyName = parameterMapping.getProperty();
-                    if (boundSql.hasAdditionalParameter(propertyName)) {
-                        value = boundSql.getAdditionalParameter(propertyName);
-                    } else if (parameterObject == null) {
-                        value = null;
-                    } else if (typeHandlerRegistry.hasTypeHandler(parameterObject.getClass())) {
-                        value = parameterObject;
-                    } else {
-                        MetaObject metaObject = configuration.newMetaObject(parameterObject);
-                        value = metaObject.getValue(propertyName);
-                    }
-                    String paramValueStr = "";
-                    if (value instanceof String) {
-                        paramValueStr = "'" + value + "'";
-                    } else if (value instanceof Date) {
-                        Date date = (Date) (value);
-                        LocalDateTime localDateTime = date.toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime();
-                        paramValueStr = "'" + ddf.format(localDateTime) + "'";
-                    } else if (value instanceof LocalDateTime) {
-                        LocalDateTime date = (LocalDateTime) (value);
-                      paramValueStr = "'" + ddf.format(date) + "'";
-                    }
-                    else if (value instanceof LocalDate) {
-                        LocalDate date = (LocalDate) (value);
-                        paramValueStr = "'" + ddf.format(date) + "'";
-                    }
-                    else {
-                        paramValueStr = value + "";
-                    }
-                    sql = sql.replaceFirst("\\?", paramValueStr);
+        private long id;
+
+        LogWriter(int chunkSize, String footer) {
+            super(chunkSize);
+            this.footer = footer;
+        }
+
+        @Override
+        protected void writeChunk(char[] chars, int length, boolean last) {
+            String text = new String(chars, 0, length);
+            if (chunks++ == 0) {
+                if (last) {
+                    log.info(PRINT_PATTERN, text, footer);
+                    return;
                 }
+                id = SEQUENCE.incrementAndGet();
+                log.info("\n------------------------------------ [sql#{} part 1]\n\n{}", id, text);
+            } else if (last) {
+                log.info("[sql#{} part {}]\n{}\n\n------------------------------------ {}, {} parts\n", id, chunks, text, footer, chunks);
+            } else {
+                log.info("[sql#{} part {}]\n{}", id, chunks, text);
             }
         }
-        return sql;
     }
 
-
     @Override
     public int getOrder() {
         return Ordered.HIGHEST_PRECEDENCE;
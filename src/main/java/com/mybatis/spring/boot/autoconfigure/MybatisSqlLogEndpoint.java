@@ -0,0 +1,148 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import com.mybatis.spring.boot.autoconfigure.capture.SqlCapture;
+import com.mybatis.spring.boot.autoconfigure.sink.SqlFileSink;
+import com.mybatis.spring.boot.autoconfigure.snapshot.StatsSnapshotWriter;
+import com.mybatis.spring.boot.autoconfigure.stats.ColumnUsageStats;
+import com.mybatis.spring.boot.autoconfigure.stats.DeepOffsetStats;
+import com.mybatis.spring.boot.autoconfigure.stats.SqlStatsRegistry;
+import com.mybatis.spring.boot.autoconfigure.stats.TypeHandlerStats;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.util.StringUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * /actuator/sqllog，输出各插件收集到的统计，并且可以在运行时修改 sql 打印配置，
+ * 同时也会通过 JMX 暴露(org.springframework.boot:type=Endpoint,name=Sqllog)
+ *
+ * @author spafka
+ */
+@Endpoint(id = "sqllog")
+public class MybatisSqlLogEndpoint {
+
+    private final PrintControl printControl;
+
+    private final ObjectProvider<SqlStatsRegistry> statsRegistry;
+
+    private final ObjectProvider<TypeHandlerStats> typeHandlerStats;
+
+    private final ObjectProvider<ColumnUsageStats> columnUsageStats;
+
+    private final ObjectProvider<DeepOffsetStats> deepOffsetStats;
+
+    private final ObjectProvider<CountCache> countCache;
+
+    private final ObjectProvider<ResultCache> resultCache;
+
+    private final ObjectProvider<SqlFileSink> sqlFileSink;
+
+    private final ObjectProvider<SqlCapture> sqlCapture;
+
+    private final ObjectProvider<AdaptiveSlowThreshold> adaptiveSlowThreshold;
+
+    private final ObjectProvider<StatsSnapshotWriter> statsSnapshotWriter;
+
+    public MybatisSqlLogEndpoint(PrintControl printControl,
+                                 ObjectProvider<SqlStatsRegistry> statsRegistry,
+                                 ObjectProvider<TypeHandlerStats> typeHandlerStats,
+                                 ObjectProvider<ColumnUsageStats> columnUsageStats,
+                                 ObjectProvider<DeepOffsetStats> deepOffsetStats,
+                                 ObjectProvider<CountCache> countCache,
+                                 ObjectProvider<ResultCache> resultCache,
+                                 ObjectProvider<SqlFileSink> sqlFileSink,
+                                 ObjectProvider<SqlCapture> sqlCapture,
+                                 ObjectProvider<AdaptiveSlowThreshold> adaptiveSlowThreshold,
+                                 ObjectProvider<StatsSnapshotWriter> statsSnapshotWriter) {
+        this.printControl = printControl;
+        this.statsRegistry = statsRegistry;
+        this.typeHandlerStats = typeHandlerStats;
+        this.columnUsageStats = columnUsageStats;
+        this.deepOffsetStats = deepOffsetStats;
+        this.countCache = countCache;
+        this.resultCache = resultCache;
+        this.sqlFileSink = sqlFileSink;
+        this.sqlCapture = sqlCapture;
+        this.adaptiveSlowThreshold = adaptiveSlowThreshold;
+        this.statsSnapshotWriter = statsSnapshotWriter;
+    }
+
+    @ReadOperation
+    public Map<String, Object> report() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("print", printControl.getSettings().toMap());
+        AdaptiveSlowThreshold adaptive = adaptiveSlowThreshold.getIfAvailable();
+        report.put("adaptiveSlow", adaptive == null ? Collections.emptyMap() : adaptive.snapshot());
+        SqlStatsRegistry registry = statsRegistry.getIfAvailable();
+        report.put("statements", registry == null ? Collections.emptyMap() : registry.snapshot());
+        StatsSnapshotWriter snapshotWriter = statsSnapshotWriter.getIfAvailable();
+        report.put("snapshot", snapshotWriter == null ? Collections.emptyMap() : snapshotWriter.toMap());
+        TypeHandlerStats handlers = typeHandlerStats.getIfAvailable();
+        report.put("typeHandlers", handlers == null ? Collections.emptyMap() : handlers.snapshot());
+        ColumnUsageStats columnUsage = columnUsageStats.getIfAvailable();
+        report.put("unusedColumns", columnUsage == null ? Collections.emptyMap() : columnUsage.snapshot());
+        DeepOffsetStats deepOffsets = deepOffsetStats.getIfAvailable();
+        report.put("deepOffsets", deepOffsets == null ? Collections.emptyMap() : deepOffsets.snapshot());
+        CountCache counts = countCache.getIfAvailable();
+        report.put("countCache", counts == null ? Collections.emptyMap() : counts.snapshot());
+        ResultCache results = resultCache.getIfAvailable();
+        report.put("resultCache", results == null ? Collections.emptyMap() : results.snapshot());
+        SqlFileSink sink = sqlFileSink.getIfAvailable();
+        report.put("sqlFile", sink == null ? Collections.emptyMap() : sink.toMap());
+        SqlCapture capture = sqlCapture.getIfAvailable();
+        report.put("capture", capture == null ? Collections.emptyMap() : capture.toMap());
+        return report;
+    }
+
+    /**
+     * 最近 seconds 秒内每个 statement 的执行次数、每秒次数、错误率和耗时，eg: GET /actuator/sqllog/60；
+     * seconds 不是正数时返回 400
+     */
+    @ReadOperation
+    public Map<String, Object> recent(@Selector int seconds) {
+        if (seconds <= 0) {
+            throw new InvalidEndpointRequestException("seconds must be positive: " + seconds, "seconds must be positive");
+        }
+        SqlStatsRegistry registry = statsRegistry.getIfAvailable();
+        return registry == null ? Collections.emptyMap() : registry.recent(seconds);
+    }
+
+    /**
+     * 修改 sql 打印配置，未传的参数保持原值；includes、excludes 为逗号分隔的 statement id 前缀，传空字符串清空
+     * eg: POST /actuator/sqllog {"enabled": true, "slowMillis": 200, "sampleRate": 0.1}；sampleRate 不在 [0, 1] 时返回 400
+     */
+    @WriteOperation
+    public Map<String, Object> print(@Nullable Boolean enabled, @Nullable Long slowMillis, @Nullable Double sampleRate,
+                                     @Nullable String includes, @Nullable String excludes) {
+        if (sampleRate != null && !(sampleRate >= 0 && sampleRate <= 1)) {
+            throw new InvalidEndpointRequestException("sampleRate must be between 0 and 1: " + sampleRate, "sampleRate must be between 0 and 1");
+        }
+        return printControl.update(enabled, slowMillis, sampleRate, split(includes), split(excludes)).toMap();
+    }
+
+    private static List<String> split(String patterns) {
+        return patterns == null ? null : Arrays.asList(StringUtils.tokenizeToStringArray(patterns, ","));
+    }
+
+    @DeleteOperation
+    public void reset() {
+        statsRegistry.ifAvailable(SqlStatsRegistry::reset);
+        typeHandlerStats.ifAvailable(TypeHandlerStats::reset);
+        columnUsageStats.ifAvailable(ColumnUsageStats::reset);
+        deepOffsetStats.ifAvailable(DeepOffsetStats::reset);
+        countCache.ifAvailable(CountCache::reset);
+        resultCache.ifAvailable(ResultCache::reset);
+        adaptiveSlowThreshold.ifAvailable(AdaptiveSlowThreshold::reset);
+    }
+}
@@ -1,37 +1,607 @@
 package com.mybatis.spring.boot.autoconfigure;
 
 
+import com.mybatis.spring.boot.autoconfigure.capture.SqlCapture;
+import com.mybatis.spring.boot.autoconfigure.sink.SqlFileSink;
+import com.mybatis.spring.boot.autoconfigure.snapshot.StatsSnapshotWriter;
+import com.mybatis.spring.boot.autoconfigure.stats.ColumnUsageStats;
+import com.mybatis.spring.boot.autoconfigure.stats.DeepOffsetStats;
+import com.mybatis.spring.boot.autoconfigure.stats.RegressionDetector;
+import com.mybatis.spring.boot.autoconfigure.stats.ResultSizeEstimator;
+import com.mybatis.spring.boot.autoconfigure.stats.SqlStatsRegistry;
+import com.mybatis.spring.boot.autoconfigure.stats.TypeHandlerStats;
+import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
 
 import javax.annotation.PostConstruct;
-import java.util.List;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
 
 
 @Configuration
 @ConditionalOnBean(SqlSessionFactory.class)
 public class MybatisSqlPrintAutoConfiguration {
 
+    /**
+     * bean 名称 -> SqlSessionFactory，每个 SqlSessionFactory 使用各自的拦截器
+     */
     @Autowired
-    private List<SqlSessionFactory> sqlSessionFactoryList;
+    private Map<String, SqlSessionFactory> sqlSessionFactories;
+
+    @Autowired(required = false)
+    private Map<String, DataSource> dataSources = Collections.emptyMap();
+
+    /**
+     * 数据源名称：SqlSessionFactory 所用 DataSource 的 bean 名称，找不到时使用 SqlSessionFactory 的 bean 名称
+     */
+    String dataSourceName(String sqlSessionFactoryName, SqlSessionFactory sqlSessionFactory) {
+        Environment environment = sqlSessionFactory.getConfiguration().getEnvironment();
+        if (environment != null) {
+            for (Map.Entry<String, DataSource> entry : dataSources.entrySet()) {
+                if (entry.getValue() == environment.getDataSource()) {
+                    return entry.getKey();
+                }
+            }
+        }
+        return sqlSessionFactoryName;
+    }
+
+    /**
+     * 打印开关默认取 mybatis.print，可以通过 /actuator/sqllog 在运行时修改
+     */
+    @Bean
+    public PrintControl printControl(@Value("${mybatis.print:false}") boolean print,
+                                     @Value("${mybatis.print-slow-millis:0}") long slowMillis,
+                                     @Value("${mybatis.print-sample-rate:1}") double sampleRate,
+                                     @Value("${mybatis.print-includes:}") String[] includes,
+                                     @Value("${mybatis.print-excludes:}") String[] excludes) {
+        return new PrintControl(new PrintSettings(print, slowMillis, sampleRate, Arrays.asList(includes), Arrays.asList(excludes)));
+    }
 
     /**
      * 兼容一下 PageHelper，让拦截器在最后一个处理 {@literal https://github.com/pagehelper/pagehelper-spring-boot}
-     * 或者通过原生的进行处理
+     * 或者通过原生的进行处理；打印关闭时拦截器也会安装，以便运行时打开以及汇总每个请求的 sql
      */
     @Configuration
-    @ConditionalOnExpression("${mybatis.print:false}")
     public class SupportPageHelper {
 
+        @Autowired
+        private PrintControl printControl;
+
+        @Autowired
+        private ObjectProvider<ResultSizeEstimator> resultSizeEstimator;
+
+        @Autowired
+        private ObjectProvider<SqlStatsRegistry> statsRegistry;
+
+        @Autowired
+        private ObjectProvider<SqlFileSink> sqlFileSink;
+
+        @Autowired
+        private ObjectProvider<AdaptiveSlowThreshold> adaptiveSlowThreshold;
+
+        /**
+         * builtin / druid / none，见 {@link PrintFormat}
+         */
+        @Value("${mybatis.print-format:builtin}")
+        private String printFormat;
+
+        /**
+         * 长 IN 列表、多行 VALUES 前后各打印的元素个数，0 表示全部打印
+         */
+        @Value("${mybatis.print-list-keep:0}")
+        private int printListKeep;
+
+        /**
+         * 一条日志最多输出的 sql 字符数，更长的 sql 分成多条日志
+         */
+        @Value("${mybatis.print-chunk-size:65536}")
+        private int printChunkSize;
+
         @PostConstruct
         public void addPrintInterceptor() {
-            MybatisSqlCompletePrintInterceptor printInterceptor = new MybatisSqlCompletePrintInterceptor();
-            for (SqlSessionFactory sqlSessionFactory : sqlSessionFactoryList) {
-                sqlSessionFactory.getConfiguration().addInterceptor(printInterceptor);
-            }
+            PrintFormat format = PrintFormat.of(printFormat);
+            sqlSessionFactories.forEach((name, sqlSessionFactory) -> {
+                org.apache.ibatis.session.Configuration configuration = sqlSessionFactory.getConfiguration();
+                MybatisSqlCompletePrintInterceptor interceptor = new MybatisSqlCompletePrintInterceptor(configuration, dataSourceName(name, sqlSessionFactory), printControl);
+                interceptor.setResultSizeEstimator(resultSizeEstimator.getIfAvailable());
+                interceptor.setStatsRegistry(statsRegistry.getIfAvailable());
+                interceptor.setPrintFormat(format);
+                interceptor.setPrintListKeep(printListKeep);
+                interceptor.setPrintChunkSize(printChunkSize);
+                interceptor.setSqlFileSink(sqlFileSink.getIfAvailable());
+                interceptor.setAdaptiveSlowThreshold(adaptiveSlowThreshold.getIfAvailable());
+                configuration.addInterceptor(interceptor);
+            });
+        }
+    }
+
+    /**
+     * 按 statement 自己的耗时分布判断慢 sql，只打印超过自身 p99 * margin 的执行，mybatis.print-adaptive.enabled=true 开启
+     */
+    @Configuration
+    @ConditionalOnExpression("${mybatis.print-adaptive.enabled:false}")
+    public class AdaptiveSlowPrint {
+
+        /**
+         * 超过 p99 的倍数
+         */
+        @Value("${mybatis.print-adaptive.margin:1.5}")
+        private double margin;
+
+        /**
+         * 样本数达到该值之前按 mybatis.print-slow-millis 打印
+         */
+        @Value("${mybatis.print-adaptive.min-samples:100}")
+        private long minSamples;
+
+        /**
+         * 每多少次执行分布中的计数减半，越小越跟随最近的耗时
+         */
+        @Value("${mybatis.print-adaptive.half-life:1000}")
+        private int halfLife;
+
+        @Bean
+        public AdaptiveSlowThreshold adaptiveSlowThreshold() {
+            return new AdaptiveSlowThreshold(margin, minSamples, halfLife);
+        }
+    }
+
+    /**
+     * 打印的 sql 写入单独的文件，不经过应用的日志框架，mybatis.sql-file.enabled=true 开启
+     */
+    @Configuration
+    @ConditionalOnExpression("${mybatis.sql-file.enabled:false}")
+    public class SqlFile {
+
+        @Value("${mybatis.sql-file.path:logs/mybatis-sql.log}")
+        private String path;
+
+        /**
+         * 单个文件的大小上限，0 表示不按大小滚动
+         */
+        @Value("${mybatis.sql-file.max-file-size:100MB}")
+        private String maxFileSize;
+
+        /**
+         * 按时间滚动的周期格式，为空表示不按时间滚动
+         */
+        @Value("${mybatis.sql-file.rotate-pattern:yyyy-MM-dd}")
+        private String rotatePattern;
+
+        @Value("${mybatis.sql-file.gzip:true}")
+        private boolean gzip;
+
+        /**
+         * 保留的滚动文件个数，0 表示不清理
+         */
+        @Value("${mybatis.sql-file.max-history:30}")
+        private int maxHistory;
+
+        /**
+         * 等待写入的 sql 条数上限，超过时丢弃
+         */
+        @Value("${mybatis.sql-file.queue-size:8192}")
+        private int queueSize;
+
+        /**
+         * 队列中等待写入的 sql 总字符数上限，超过时丢弃
+         */
+        @Value("${mybatis.sql-file.max-queued-chars:16777216}")
+        private long maxQueuedChars;
+
+        /**
+         * 单条 sql 的字符数上限，超出部分截断
+         */
+        @Value("${mybatis.sql-file.max-sql-chars:1048576}")
+        private int maxSqlChars;
+
+        @Value("${mybatis.sql-file.buffer-size:256KB}")
+        private String bufferSize;
+
+        @Bean(destroyMethod = "close")
+        public SqlFileSink sqlFileSink() throws IOException {
+            SqlFileSink sink = new SqlFileSink(Paths.get(path), DataSize.parse(maxFileSize).toBytes(), rotatePattern, gzip,
+                    maxHistory, queueSize, maxQueuedChars, maxSqlChars, (int) DataSize.parse(bufferSize).toBytes());
+            sink.start();
+            return sink;
+        }
+    }
+
+    /**
+     * 录制 sql 的执行，之后用 {@link com.mybatis.spring.boot.autoconfigure.capture.SqlReplayer} 回放，
+     * mybatis.capture.enabled=true 开启
+     */
+    @Configuration
+    @ConditionalOnExpression("${mybatis.capture.enabled:false}")
+    public class SqlCaptureRecorder {
+
+        /**
+         * 实际文件名中会加上开始时间
+         */
+        @Value("${mybatis.capture.path:logs/mybatis-capture.bin}")
+        private String path;
+
+        /**
+         * 文件大小上限，达到后停止录制，0 表示不限制
+         */
+        @Value("${mybatis.capture.max-size:1GB}")
+        private String maxSize;
+
+        /**
+         * 等待写入的执行记录上限，超过时丢弃
+         */
+        @Value("${mybatis.capture.queue-size:8192}")
+        private int queueSize;
+
+        private SqlCapture capture;
+
+        @PostConstruct
+        public void addCaptureInterceptor() throws IOException {
+            capture = new SqlCapture(Paths.get(path), DataSize.parse(maxSize).toBytes(), queueSize);
+            capture.start();
+            sqlSessionFactories.forEach((name, sqlSessionFactory) ->
+                    sqlSessionFactory.getConfiguration().addInterceptor(new SqlCaptureInterceptor(capture, sqlSessionFactory.getConfiguration(), dataSourceName(name, sqlSessionFactory))));
+        }
+
+        @Bean(destroyMethod = "close")
+        public SqlCapture sqlCapture() {
+            return capture;
+        }
+    }
+
+    /**
+     * 查询结果内存估算，打印在 sql 日志中，同时开启 mybatis.stats.enabled 时按 statement 汇总，
+     * mybatis.result-size.enabled=true 开启
+     */
+    @Configuration
+    @ConditionalOnExpression("${mybatis.result-size.enabled:false}")
+    public class ResultSize {
+
+        /**
+         * 每次查询最多抽样估算的元素个数
+         */
+        @Value("${mybatis.result-size.sample-size:32}")
+        private int sampleSize;
+
+        /**
+         * 每个元素最多向下遍历的层数
+         */
+        @Value("${mybatis.result-size.max-depth:4}")
+        private int maxDepth;
+
+        @Bean
+        public ResultSizeEstimator resultSizeEstimator() {
+            return new ResultSizeEstimator(sampleSize, maxDepth);
+        }
+    }
+
+    /**
+     * sql 生成耗时与执行耗时统计，mybatis.stats.enabled=true 开启
+     */
+    @Configuration
+    @ConditionalOnExpression("${mybatis.stats.enabled:false}")
+    public class SqlStats {
+
+        /**
+         * 每个动态 sql 最多记录的 sql 形态个数
+         */
+        @Value("${mybatis.stats.max-shapes:64}")
+        private int maxShapes;
+
+        /**
+         * 每个 statement 最近统计(1 秒一个桶)覆盖的秒数，0 表示不统计，默认 15 分钟
+         */
+        @Value("${mybatis.stats.window-seconds:900}")
+        private int windowSeconds;
+
+        /**
+         * 耗时退化检测：窗口 p95 超过 EWMA 基线的 ratio 倍时告警一次
+         */
+        @Value("${mybatis.stats.regression.enabled:false}")
+        private boolean regression;
+
+        @Value("${mybatis.stats.regression.ratio:2}")
+        private double regressionRatio;
+
+        /**
+         * 每个窗口的执行次数
+         */
+        @Value("${mybatis.stats.regression.window-size:100}")
+        private int regressionWindowSize;
+
+        /**
+         * EWMA 系数，越大基线跟随越快
+         */
+        @Value("${mybatis.stats.regression.alpha:0.1}")
+        private double regressionAlpha;
+
+        /**
+         * 只建立基线、不告警的窗口个数
+         */
+        @Value("${mybatis.stats.regression.warmup-windows:5}")
+        private int regressionWarmupWindows;
+
+        /**
+         * p95 至少比基线多出的毫秒数，避免 0.1ms 到 0.3ms 这样的变化告警
+         */
+        @Value("${mybatis.stats.regression.min-millis:2}")
+        private long regressionMinMillis;
+
+        /**
+         * 开启统计快照时每个 statement 才记录耗时分布
+         */
+        @Value("${mybatis.stats.snapshot.enabled:false}")
+        private boolean snapshot;
+
+        /**
+         * 统计快照目录，mybatis.stats.snapshot.enabled=true 时定时写入
+         */
+        @Value("${mybatis.stats.snapshot.dir:logs/mybatis-stats}")
+        private String snapshotDir;
+
+        @Value("${mybatis.stats.snapshot.interval-seconds:300}")
+        private long snapshotIntervalSeconds;
+
+        /**
+         * 保留的快照个数，默认 5 分钟一个保留 1 天
+         */
+        @Value("${mybatis.stats.snapshot.max-files:288}")
+        private int snapshotMaxFiles;
+
+        private SqlStatsRegistry registry;
+
+        @PostConstruct
+        public void addStatsInterceptor() {
+            registry = new SqlStatsRegistry(maxShapes, windowSeconds, snapshot);
+            RegressionDetector regressionDetector = regression ? new RegressionDetector(regressionRatio, regressionWindowSize,
+                    regressionAlpha, regressionWarmupWindows, regressionMinMillis) : null;
+            sqlSessionFactories.forEach((name, sqlSessionFactory) -> {
+                SqlStatsInterceptor interceptor = new SqlStatsInterceptor(registry, dataSourceName(name, sqlSessionFactory));
+                interceptor.setRegressionDetector(regressionDetector);
+                sqlSessionFactory.getConfiguration().addInterceptor(interceptor);
+            });
+        }
+
+        @Bean
+        public SqlStatsRegistry sqlStatsRegistry() {
+            return registry;
+        }
+
+        @Bean(destroyMethod = "close")
+        @ConditionalOnExpression("${mybatis.stats.snapshot.enabled:false}")
+        public StatsSnapshotWriter statsSnapshotWriter() throws IOException {
+            StatsSnapshotWriter writer = new StatsSnapshotWriter(registry, Paths.get(snapshotDir), snapshotIntervalSeconds, snapshotMaxFiles);
+            writer.start();
+            return writer;
+        }
+    }
+
+    /**
+     * TypeHandler 计时，会替换掉所有已注册的 TypeHandler，mybatis.type-handler-stats.enabled=true 开启
+     */
+    @Configuration
+    @ConditionalOnExpression("${mybatis.type-handler-stats.enabled:false}")
+    public class TypeHandlerTiming {
+
+        private final TypeHandlerStats stats = new TypeHandlerStats();
+
+        @PostConstruct
+        public void instrumentTypeHandlers() {
+            sqlSessionFactories.forEach((name, sqlSessionFactory) -> {
+                TypeHandlerTimingInterceptor timingInterceptor = new TypeHandlerTimingInterceptor(stats, dataSourceName(name, sqlSessionFactory));
+                timingInterceptor.instrument(sqlSessionFactory.getConfiguration());
+                sqlSessionFactory.getConfiguration().addInterceptor(timingInterceptor);
+            });
+        }
+
+        @Bean
+        public TypeHandlerStats typeHandlerStats() {
+            return stats;
+        }
+    }
+
+    /**
+     * 大结果集保护，mybatis.result-guard.enabled=true 开启
+     */
+    @Configuration
+    @ConditionalOnExpression("${mybatis.result-guard.enabled:false}")
+    public class ResultSetGuard {
+
+        @Value("${mybatis.result-guard.warn-rows:10000}")
+        private long warnRows;
+
+        /**
+         * 0 表示不限制
+         */
+        @Value("${mybatis.result-guard.max-rows:0}")
+        private long maxRows;
+
+        /**
+         * 按 namespace 单独配置，pattern:warnRows:maxRows
+         */
+        @Value("${mybatis.result-guard.namespace-limits:}")
+        private String[] namespaceLimits;
+
+        @PostConstruct
+        public void addResultSetGuardInterceptor() {
+            sqlSessionFactories.forEach((name, sqlSessionFactory) ->
+                    sqlSessionFactory.getConfiguration().addInterceptor(new ResultSetGuardInterceptor(dataSourceName(name, sqlSessionFactory),
+                            new RowLimits(warnRows, maxRows), Arrays.asList(namespaceLimits))));
+        }
+    }
+
+    /**
+     * 多余列检测，mybatis.column-usage.enabled=true 开启
+     */
+    @Configuration
+    @ConditionalOnExpression("${mybatis.column-usage.enabled:false}")
+    public class UnusedColumns {
+
+        private final ColumnUsageStats stats = new ColumnUsageStats();
+
+        @PostConstruct
+        public void addUnusedColumnInterceptor() {
+            sqlSessionFactories.forEach((name, sqlSessionFactory) ->
+                    sqlSessionFactory.getConfiguration().addInterceptor(new UnusedColumnInterceptor(stats, dataSourceName(name, sqlSessionFactory))));
+        }
+
+        @Bean
+        public ColumnUsageStats columnUsageStats() {
+            return stats;
+        }
+    }
+
+    /**
+     * 深分页检测，需要 druid 解析 sql，mybatis.deep-offset.enabled=true 开启
+     */
+    @Configuration
+    @ConditionalOnClass(name = "com.alibaba.druid.sql.SQLUtils")
+    @ConditionalOnExpression("${mybatis.deep-offset.enabled:false}")
+    public class DeepOffset {
+
+        /**
+         * offset 大于等于该值时记录
+         */
+        @Value("${mybatis.deep-offset.threshold:10000}")
+        private long threshold;
+
+        /**
+         * druid 解析 sql 使用的数据库类型
+         */
+        @Value("${mybatis.deep-offset.db-type:mysql}")
+        private String dbType;
+
+        private final DeepOffsetStats stats = new DeepOffsetStats();
+
+        @PostConstruct
+        public void addDeepOffsetInterceptor() {
+            sqlSessionFactories.forEach((name, sqlSessionFactory) ->
+                    sqlSessionFactory.getConfiguration().addInterceptor(new DeepOffsetInterceptor(stats, dataSourceName(name, sqlSessionFactory), threshold, dbType)));
+        }
+
+        @Bean
+        public DeepOffsetStats deepOffsetStats() {
+            return stats;
+        }
+    }
+
+    /**
+     * PageHelper count 查询结果缓存，mybatis.count-cache.enabled=true 开启
+     */
+    @Configuration
+    @ConditionalOnExpression("${mybatis.count-cache.enabled:false}")
+    public class CountQueryCache {
+
+        /**
+         * count 查询的 statement id 后缀，同 PageHelper 的 countSuffix
+         */
+        @Value("${mybatis.count-cache.count-suffix:_COUNT}")
+        private String countSuffix;
+
+        @Value("${mybatis.count-cache.ttl-millis:5000}")
+        private long ttlMillis;
+
+        @Value("${mybatis.count-cache.max-entries:10000}")
+        private long maxEntries;
+
+        /**
+         * 按 namespace 单独配置，pattern:ttlMillis，0 表示不缓存
+         */
+        @Value("${mybatis.count-cache.namespace-ttls:}")
+        private String[] namespaceTtls;
+
+        private CountCache countCache;
+
+        @PostConstruct
+        public void addCountCacheInterceptor() {
+            countCache = new CountCache(countSuffix, ttlMillis, maxEntries, Arrays.asList(namespaceTtls));
+            sqlSessionFactories.forEach((name, sqlSessionFactory) ->
+                    sqlSessionFactory.getConfiguration().addInterceptor(new CountCacheInterceptor(countCache, dataSourceName(name, sqlSessionFactory))));
+        }
+
+        @Bean
+        public CountCache countCache() {
+            return countCache;
+        }
+    }
+
+    /**
+     * 查询结果缓存，mybatis.result-cache.enabled=true 开启，需要缓存的 statement 通过 statements 配置或者 {@link CacheResult} 标注
+     */
+    @Configuration
+    @ConditionalOnExpression("${mybatis.result-cache.enabled:false}")
+    public class QueryResultCache {
+
+        /**
+         * {@link CacheResult} 未指定时的缓存时间
+         */
+        @Value("${mybatis.result-cache.ttl-millis:60000}")
+        private long ttlMillis;
+
+        @Value("${mybatis.result-cache.max-entries:10000}")
+        private long maxEntries;
+
+        /**
+         * 按估算的结果大小限制，0 表示不限制
+         */
+        @Value("${mybatis.result-cache.max-bytes:0}")
+        private long maxBytes;
+
+        /**
+         * 需要缓存的 statement，pattern:ttlMillis
+         */
+        @Value("${mybatis.result-cache.statements:}")
+        private String[] statements;
+
+        private ResultCache resultCache;
+
+        @PostConstruct
+        public void addResultCacheInterceptor() {
+            resultCache = new ResultCache(ttlMillis, maxEntries, maxBytes, Arrays.asList(statements));
+            sqlSessionFactories.forEach((name, sqlSessionFactory) ->
+                    sqlSessionFactory.getConfiguration().addInterceptor(new ResultCacheInterceptor(resultCache, dataSourceName(name, sqlSessionFactory))));
+        }
+
+        @Bean
+        public ResultCache resultCache() {
+            return resultCache;
+        }
+    }
+
+    @Configuration
+    @ConditionalOnClass(name = "org.springframework.boot.actuate.endpoint.annotation.Endpoint")
+    public class SqlLogEndpoint {
+
+        @Bean
+        @ConditionalOnMissingBean
+        public MybatisSqlLogEndpoint mybatisSqlLogEndpoint(PrintControl printControl,
+                                                           ObjectProvider<SqlStatsRegistry> statsRegistry,
+                                                           ObjectProvider<TypeHandlerStats> typeHandlerStats,
+                                                           ObjectProvider<ColumnUsageStats> columnUsageStats,
+                                                           ObjectProvider<DeepOffsetStats> deepOffsetStats,
+                                                           ObjectProvider<CountCache> countCache,
+                                                           ObjectProvider<ResultCache> resultCache,
+                                                           ObjectProvider<SqlFileSink> sqlFileSink,
+                                                           ObjectProvider<SqlCapture> sqlCapture,
+                                                           ObjectProvider<AdaptiveSlowThreshold> adaptiveSlowThreshold,
+                                                           ObjectProvider<StatsSnapshotWriter> statsSnapshotWriter) {
+            return new MybatisSqlLogEndpoint(printControl, statsRegistry, typeHandlerStats, columnUsageStats, deepOffsetStats, countCache, resultCache,
+                    sqlFileSink, sqlCapture, adaptiveSlowThreshold, statsSnapshotWriter);
         }
     }
 
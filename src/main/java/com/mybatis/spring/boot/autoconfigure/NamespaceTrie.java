@@ -0,0 +1,102 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import org.springframework.util.StringUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * statement id 模式的前缀树，按 '.' 分段：
+ * <ul>
+ * <li>com.acme.order 匹配 com.acme.order 以及其下所有 statement</li>
+ * <li>* 匹配一个或多个分段，eg: *.HeartbeatMapper.* 匹配任意包下 HeartbeatMapper 的所有 statement</li>
+ * </ul>
+ * 同时匹配多个模式时取分段最多(最具体)的模式的值。匹配需要拆分 statement id，调用方应按 MappedStatement 缓存结果
+ *
+ * @author spafka
+ */
+public final class NamespaceTrie<V> {
+
+    private static final String WILDCARD = "*";
+
+    private final Node<V> root = new Node<>();
+
+    private int size;
+
+    public void put(String pattern, V value) {
+        Node<V> node = root;
+        String[] segments = split(pattern);
+        for (String segment : segments) {
+            if (WILDCARD.equals(segment)) {
+                if (node.wildcard == null) {
+                    node.wildcard = new Node<>();
+                }
+                node = node.wildcard;
+            } else {
+                node = node.children.computeIfAbsent(segment, k -> new Node<>());
+            }
+        }
+        if (node.value == null) {
+            size++;
+        }
+        node.value = value;
+        node.depth = segments.length;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return 最具体的匹配模式对应的值，没有匹配时返回 null
+     */
+    public V find(String statementId) {
+        if (size == 0 || statementId == null) {
+            return null;
+        }
+        Match<V> match = new Match<>();
+        find(root, split(statementId), 0, match);
+        return match.value;
+    }
+
+    private static <V> void find(Node<V> node, String[] segments, int index, Match<V> match) {
+        if (node.value != null && node.depth >= match.depth) {
+            match.value = node.value;
+            match.depth = node.depth;
+        }
+        if (index == segments.length) {
+            return;
+        }
+        Node<V> child = node.children.get(segments[index]);
+        if (child != null) {
+            find(child, segments, index + 1, match);
+        }
+        if (node.wildcard != null) {
+            for (int end = index + 1; end <= segments.length; end++) {
+                find(node.wildcard, segments, end, match);
+            }
+        }
+    }
+
+    private static String[] split(String value) {
+        return StringUtils.tokenizeToStringArray(value, ".");
+    }
+
+    private static final class Node<V> {
+
+        private final Map<String, Node<V>> children = new HashMap<>();
+
+        private Node<V> wildcard;
+
+        private V value;
+
+        private int depth = -1;
+    }
+
+    private static final class Match<V> {
+
+        private V value;
+
+        private int depth = -1;
+    }
+}
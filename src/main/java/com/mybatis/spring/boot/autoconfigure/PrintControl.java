@@ -0,0 +1,40 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+
+/**
+ * 运行时开关 sql 打印，拦截器每次只读取一次 {@link #getSettings()}
+ *
+ * @author spafka
+ */
+@Slf4j
+public class PrintControl {
+
+    private volatile PrintSettings settings;
+
+    public PrintControl(PrintSettings settings) {
+        this.settings = settings;
+    }
+
+    public PrintSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * 为 null 的参数保持原值
+     */
+    public synchronized PrintSettings update(Boolean enabled, Long slowMillis, Double sampleRate, List<String> includes, List<String> excludes) {
+        PrintSettings current = this.settings;
+        PrintSettings updated = new PrintSettings(
+                enabled == null ? current.isEnabled() : enabled,
+                slowMillis == null ? current.getSlowMillis() : slowMillis,
+                sampleRate == null ? current.getSampleRate() : sampleRate,
+                includes == null ? current.getIncludes() : includes,
+                excludes == null ? current.getExcludes() : excludes);
+        this.settings = updated;
+        log.info("mybatis print settings changed: {}", updated.toMap());
+        return updated;
+    }
+}
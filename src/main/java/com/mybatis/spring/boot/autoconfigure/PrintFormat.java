@@ -0,0 +1,37 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import java.util.Locale;
+
+/**
+ * 打印 sql 的格式，mybatis.print-format 配置
+ *
+ * @author spafka
+ */
+public enum PrintFormat {
+
+    /**
+     * 内置的 {@link com.mybatis.spring.boot.autoconfigure.sql.SqlFormatter}，只处理 token，不需要 druid
+     */
+    BUILTIN,
+
+    /**
+     * druid 的 SQLUtils.formatMySql，完整解析 sql，关键字转大写，开销较大
+     */
+    DRUID,
+
+    /**
+     * 不换行，只规整空白
+     */
+    NONE;
+
+    /**
+     * 忽略大小写；druid 不存在时 DRUID 退回 BUILTIN
+     */
+    public static PrintFormat of(String name) {
+        PrintFormat format = valueOf(name.trim().toUpperCase(Locale.ROOT));
+        if (format == DRUID && !MybatisSqlCompletePrintInterceptor.druidExists) {
+            return BUILTIN;
+        }
+        return format;
+    }
+}
@@ -0,0 +1,110 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import org.apache.ibatis.mapping.MappedStatement;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * sql 打印配置的不可变快照，运行时修改配置会整体替换，见 {@link PrintControl}
+ *
+ * @author spafka
+ */
+public final class PrintSettings {
+
+    private final boolean enabled;
+
+    /**
+     * 只打印耗时大于等于该值的 sql，0 表示全部打印
+     */
+    private final long slowMillis;
+
+    /**
+     * 打印的采样比例，0 ~ 1
+     */
+    private final double sampleRate;
+
+    /**
+     * statement id 模式，为空表示全部，语法见 {@link NamespaceTrie}
+     */
+    private final List<String> includes;
+
+    private final List<String> excludes;
+
+    /**
+     * 由 includes、excludes 编译，匹配结果缓存在其中，配置修改时随快照一起替换
+     */
+    private final StatementFilter statementFilter;
+
+    public PrintSettings(boolean enabled, long slowMillis, double sampleRate, List<String> includes, List<String> excludes) {
+        if (!(sampleRate >= 0 && sampleRate <= 1)) {
+            throw new IllegalArgumentException("sampleRate must be between 0 and 1: " + sampleRate);
+        }
+        this.enabled = enabled;
+        this.slowMillis = Math.max(0, slowMillis);
+        this.sampleRate = sampleRate;
+        this.includes = normalize(includes);
+        this.excludes = normalize(excludes);
+        this.statementFilter = new StatementFilter(this.includes, this.excludes);
+    }
+
+    private static List<String> normalize(List<String> patterns) {
+        if (patterns == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(patterns.stream()
+                .map(String::trim)
+                .filter(p -> !p.isEmpty())
+                .collect(Collectors.toList()));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getSlowMillis() {
+        return slowMillis;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public List<String> getIncludes() {
+        return includes;
+    }
+
+    public List<String> getExcludes() {
+        return excludes;
+    }
+
+    public boolean hasStatementFilter() {
+        return !statementFilter.isEmpty();
+    }
+
+    boolean isSlow(long costMillis) {
+        return costMillis >= slowMillis;
+    }
+
+    boolean sampled() {
+        return sampleRate >= 1 || (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+
+    boolean matches(MappedStatement mappedStatement) {
+        return statementFilter.matches(mappedStatement);
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("enabled", enabled);
+        map.put("slowMillis", slowMillis);
+        map.put("sampleRate", sampleRate);
+        map.put("includes", includes);
+        map.put("excludes", excludes);
+        return map;
+    }
+}
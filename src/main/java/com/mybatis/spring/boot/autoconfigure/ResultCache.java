@@ -0,0 +1,160 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import com.mybatis.spring.boot.autoconfigure.cache.TransactionalCacheBuffer;
+import com.mybatis.spring.boot.autoconfigure.cache.TtlCache;
+import com.mybatis.spring.boot.autoconfigure.stats.CacheStats;
+import com.mybatis.spring.boot.autoconfigure.stats.ResultSizeEstimator;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.SqlCommandType;
+
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 查询结果缓存，所有数据源共用。statement 通过配置的 id 模式或者 Mapper 方法上的 {@link CacheResult} 开启，
+ * 同一 namespace 执行 insert / update / delete 时失效，查询结果在事务提交后才放入缓存，回滚时丢弃。
+ * 条目数以及估算的总字节数超过上限时按最近访问淘汰。缓存的对象被所有调用方共享，必须当作不可变对象使用
+ *
+ * @author spafka
+ */
+@Slf4j
+public class ResultCache {
+
+    private static final long DISABLED = 0;
+
+    private final TtlCache<CacheKey, List<Object>> cache;
+
+    private final TransactionalCacheBuffer<CacheKey, List<Object>> buffer;
+
+    private final CacheStats stats = new CacheStats();
+
+    private final long defaultTtlMillis;
+
+    /**
+     * 为空时不按字节数限制，每个条目的权重为 1
+     */
+    private final ResultSizeEstimator estimator;
+
+    private final NamespaceTrie<Long> statementTtls = new NamespaceTrie<>();
+
+    private final ConcurrentMap<MappedStatement, Long> ttlCache = new ConcurrentHashMap<>();
+
+    /**
+     * @param statements pattern:ttlMillis，pattern 语法见 {@link NamespaceTrie}
+     * @param maxBytes   0 表示不限制
+     */
+    public ResultCache(long defaultTtlMillis, long maxEntries, long maxBytes, List<String> statements) {
+        this.cache = new TtlCache<>(maxEntries, maxBytes);
+        this.buffer = new TransactionalCacheBuffer<>(cache);
+        this.defaultTtlMillis = defaultTtlMillis;
+        this.estimator = maxBytes > 0 ? new ResultSizeEstimator(8, 4) : null;
+        for (String statement : statements) {
+            Map.Entry<String, Long> entry = CountCache.parse(statement);
+            this.statementTtls.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * 0 表示不缓存，结果按 MappedStatement 缓存
+     */
+    long ttlMillis(MappedStatement mappedStatement) {
+        Long ttl = ttlCache.get(mappedStatement);
+        if (ttl == null) {
+            ttl = resolveTtl(mappedStatement);
+            ttlCache.put(mappedStatement, ttl);
+        }
+        return ttl;
+    }
+
+    private long resolveTtl(MappedStatement mappedStatement) {
+        if (mappedStatement.getSqlCommandType() != SqlCommandType.SELECT) {
+            return DISABLED;
+        }
+        Long ttl = statementTtls.find(mappedStatement.getId());
+        if (ttl == null) {
+            CacheResult cacheResult = annotation(mappedStatement.getId());
+            if (cacheResult == null) {
+                return DISABLED;
+            }
+            ttl = cacheResult.ttlMillis() < 0 ? defaultTtlMillis : cacheResult.ttlMillis();
+        }
+        if (ttl > 0 && mappedStatement.getConfiguration().isLazyLoadingEnabled() && hasNestedQueries(mappedStatement)) {
+            // 延迟加载的代理对象持有 SqlSession，不能跨会话共享
+            log.warn("{} uses lazy loading and will not be cached", mappedStatement.getId());
+            return DISABLED;
+        }
+        return ttl;
+    }
+
+    private static boolean hasNestedQueries(MappedStatement mappedStatement) {
+        for (ResultMap resultMap : mappedStatement.getResultMaps()) {
+            if (resultMap.hasNestedQueries()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * statement id 为 Mapper 接口名.方法名，重载的方法任意一个标注即可
+     */
+    private static CacheResult annotation(String statementId) {
+        int index = statementId.lastIndexOf('.');
+        if (index < 0) {
+            return null;
+        }
+        try {
+            Class<?> mapper = Resources.classForName(statementId.substring(0, index));
+            String methodName = statementId.substring(index + 1);
+            for (Method method : mapper.getMethods()) {
+                if (method.getName().equals(methodName) && method.isAnnotationPresent(CacheResult.class)) {
+                    return method.getAnnotation(CacheResult.class);
+                }
+            }
+        } catch (ClassNotFoundException e) {
+            // 只有 xml 没有对应接口的 namespace
+        }
+        return null;
+    }
+
+    long weight(List<?> result) {
+        return estimator == null ? 1 : estimator.estimate(result);
+    }
+
+    TtlCache<CacheKey, List<Object>> getCache() {
+        return cache;
+    }
+
+    TransactionalCacheBuffer<CacheKey, List<Object>> getBuffer() {
+        return buffer;
+    }
+
+    CacheStats getStats() {
+        return stats;
+    }
+
+    public void reset() {
+        cache.clear();
+        stats.reset();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("entries", cache.size());
+        if (estimator != null) {
+            map.put("bytes", cache.getWeight());
+        }
+        map.put("evictions", cache.getEvictions());
+        map.put("pendingTransactions", buffer.getPendingTransactions());
+        map.put("statements", stats.snapshot());
+        return map;
+    }
+}
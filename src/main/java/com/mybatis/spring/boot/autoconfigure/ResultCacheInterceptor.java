@@ -0,0 +1,149 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import com.mybatis.spring.boot.autoconfigure.stats.CacheStats;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.plugin.*;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * 查询结果缓存，在 Executor 层拦截，命中时不获取连接。key 为数据源、statement id、RowBounds、sql 以及参数值；
+ * 使用 ResultHandler 的查询、PageHelper 分页中的查询不缓存(分页参数不在 key 中)。
+ * 查询结果在提交后才放入缓存，见 {@link com.mybatis.spring.boot.autoconfigure.cache.TransactionalCacheBuffer}；
+ * 命中时只复制 List，其中的对象被所有调用方共享，不能修改
+ *
+ * @author spafka
+ */
+@Intercepts({@Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class}),
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
+        @Signature(type = Executor.class, method = "commit", args = {boolean.class}),
+        @Signature(type = Executor.class, method = "rollback", args = {boolean.class}),
+        @Signature(type = Executor.class, method = "close", args = {boolean.class})})
+public class ResultCacheInterceptor implements Interceptor {
+
+    /**
+     * PageHelper 的 PageMethod.getLocalPage()，没有 PageHelper 时为空
+     */
+    private static final Method GET_LOCAL_PAGE = localPageMethod();
+
+    private final ResultCache resultCache;
+
+    private final String dataSource;
+
+    public ResultCacheInterceptor(ResultCache resultCache, String dataSource) {
+        this.resultCache = resultCache;
+        this.dataSource = dataSource;
+    }
+
+    private static Method localPageMethod() {
+        try {
+            return Class.forName("com.github.pagehelper.page.PageMethod").getMethod("getLocalPage");
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        String method = invocation.getMethod().getName();
+        if (!"query".equals(method) && !"update".equals(method)) {
+            return resultCache.getBuffer().complete(invocation);
+        }
+        Object[] args = invocation.getArgs();
+        MappedStatement ms = (MappedStatement) args[0];
+        Executor executor = (Executor) invocation.getTarget();
+        Object transaction = executor.getTransaction();
+        String namespace = CountCache.namespace(dataSource, ms.getId());
+        if (args.length == 2) {
+            // 执行前后都失效，执行期间开始的查询读到的结果也不会写入；提交时再失效一次
+            resultCache.getBuffer().write(transaction, namespace);
+            try {
+                return invocation.proceed();
+            } finally {
+                resultCache.getCache().invalidate(namespace);
+            }
+        }
+        long ttlMillis = resultCache.ttlMillis(ms);
+        if (ttlMillis <= 0 || args[3] != null || inPage() || resultCache.getBuffer().isWritten(transaction, namespace)) {
+            // 本事务写过的 namespace，缓存中的结果不包含未提交的修改
+            return invocation.proceed();
+        }
+
+        Object parameter = args[1];
+        RowBounds rowBounds = (RowBounds) args[2];
+        BoundSql boundSql = args.length == 6 ? (BoundSql) args[5] : ms.getBoundSql(parameter);
+        CacheKey key = key(ms, rowBounds, boundSql);
+        CacheStats.Counts counts = resultCache.getStats().counts(dataSource, ms.getId());
+        List<Object> cached = resultCache.getCache().get(key);
+        if (cached != null) {
+            counts.hit();
+            return new ArrayList<>(cached);
+        }
+        counts.miss();
+        long version = resultCache.getCache().version(namespace);
+        Object result;
+        if (args.length == 6) {
+            result = invocation.proceed();
+        } else {
+            // 同 SqlStatsInterceptor，已经生成了 BoundSql，直接调用 6 个参数的 query
+            CacheKey cacheKey = executor.createCacheKey(ms, parameter, rowBounds, boundSql);
+            result = executor.query(ms, parameter, rowBounds, null, cacheKey, boundSql);
+        }
+        if (result instanceof List) {
+            List<Object> copy = Collections.unmodifiableList(new ArrayList<>((List<?>) result));
+            resultCache.getBuffer().put(transaction, key, copy, namespace, version, ttlMillis, resultCache.weight(copy));
+        }
+        return result;
+    }
+
+    private static boolean inPage() {
+        if (GET_LOCAL_PAGE == null) {
+            return false;
+        }
+        try {
+            return GET_LOCAL_PAGE.invoke(null) != null;
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    private CacheKey key(MappedStatement ms, RowBounds rowBounds, BoundSql boundSql) {
+        CacheKey key = new CacheKey();
+        key.update(dataSource);
+        key.update(ms.getId());
+        key.update(rowBounds.getOffset());
+        key.update(rowBounds.getLimit());
+        key.update(boundSql.getSql());
+        List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
+        if (parameterMappings != null) {
+            for (ParameterMapping parameterMapping : parameterMappings) {
+                if (parameterMapping.getMode() != ParameterMode.OUT) {
+                    key.update(BoundSqlParameters.value(ms.getConfiguration(), boundSql, parameterMapping));
+                }
+            }
+        }
+        return key;
+    }
+
+    @Override
+    public Object plugin(Object target) {
+        return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+
+    }
+}
@@ -0,0 +1,113 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.*;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 大结果集保护：在 ResultSet.next() 时计数，行数超过 warnRows 时告警一次，超过 maxRows 时抛出
+ * {@link ResultSetTooLargeException} 终止查询，不必等整个结果集都映射到 List 中才发现。
+ * 可以按 namespace 单独配置，游标查询不受限制
+ *
+ * @author spafka
+ */
+@Intercepts({@Signature(type = StatementHandler.class, method = "query", args = {Statement.class, ResultHandler.class})})
+@Slf4j
+public class ResultSetGuardInterceptor implements Interceptor {
+
+    private final String dataSource;
+
+    private final RowLimits defaultLimits;
+
+    private final NamespaceTrie<RowLimits> namespaceLimits = new NamespaceTrie<>();
+
+    private final ConcurrentMap<MappedStatement, RowLimits> limitsCache = new ConcurrentHashMap<>();
+
+    /**
+     * @param namespaceLimits pattern:warnRows:maxRows，pattern 语法见 {@link NamespaceTrie}
+     */
+    public ResultSetGuardInterceptor(String dataSource, RowLimits defaultLimits, List<String> namespaceLimits) {
+        this.dataSource = dataSource;
+        this.defaultLimits = defaultLimits;
+        for (String namespaceLimit : namespaceLimits) {
+            Map.Entry<String, RowLimits> entry = RowLimits.parse(namespaceLimit);
+            this.namespaceLimits.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        MappedStatement mappedStatement = StatementHandlers.mappedStatement((StatementHandler) invocation.getTarget());
+        if (mappedStatement == null) {
+            return invocation.proceed();
+        }
+        RowLimits limits = limits(mappedStatement);
+        if (limits.isUnlimited()) {
+            return invocation.proceed();
+        }
+        RowCounter counter = new RowCounter(mappedStatement.getId(), limits);
+        Object[] args = invocation.getArgs();
+        args[0] = ResultSetProxies.wrapStatement((Statement) args[0], rs -> ResultSetProxies.wrapResultSet(rs, counter));
+        return invocation.proceed();
+    }
+
+    RowLimits limits(MappedStatement mappedStatement) {
+        RowLimits limits = limitsCache.get(mappedStatement);
+        if (limits == null) {
+            limits = namespaceLimits.find(mappedStatement.getId());
+            if (limits == null) {
+                limits = defaultLimits;
+            }
+            limitsCache.put(mappedStatement, limits);
+        }
+        return limits;
+    }
+
+    /**
+     * 一次查询(可能有多个结果集)的行数计数，只在执行查询的线程中使用
+     */
+    private class RowCounter implements Runnable {
+
+        private final String statementId;
+
+        private final RowLimits limits;
+
+        private long rows;
+
+        RowCounter(String statementId, RowLimits limits) {
+            this.statementId = statementId;
+            this.limits = limits;
+        }
+
+        @Override
+        public void run() {
+            rows++;
+            if (limits.getWarnRows() > 0 && rows == limits.getWarnRows() + 1) {
+                log.warn("[{}] {} returned more than {} rows, consider paging or a cursor", dataSource, statementId, limits.getWarnRows());
+            }
+            if (limits.getMaxRows() > 0 && rows > limits.getMaxRows()) {
+                throw new ResultSetTooLargeException("[" + dataSource + "] " + statementId + " returned more than " + limits.getMaxRows()
+                        + " rows, query aborted by mybatis.result-guard (" + limits + ")");
+            }
+        }
+    }
+
+    @Override
+    public Object plugin(Object target) {
+        return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+
+    }
+}
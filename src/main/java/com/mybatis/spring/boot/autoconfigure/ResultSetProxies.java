@@ -0,0 +1,90 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import com.mybatis.spring.boot.autoconfigure.capture.SqlNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.function.ObjIntConsumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * 和 mybatis 的 ResultSetLogger 一样，用 jdk 动态代理包装 Statement，使 Statement.getResultSet 返回包装过的 ResultSet
+ *
+ * @author spafka
+ */
+final class ResultSetProxies {
+
+    private ResultSetProxies() {
+    }
+
+    /**
+     * 只代理 jdbc 的 Statement 接口(和 mybatis 的 jdbc logger 一样)，驱动、连接池的其他接口不代理
+     *
+     * @param resultSetWrapper 对每个 getResultSet 返回的 ResultSet 进行包装
+     */
+    static Statement wrapStatement(Statement statement, UnaryOperator<ResultSet> resultSetWrapper) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            Object result = invoke(statement, method, args);
+            if ("getResultSet".equals(method.getName()) && result != null) {
+                return resultSetWrapper.apply((ResultSet) result);
+            }
+            return result;
+        };
+        return (Statement) Proxy.newProxyInstance(statement.getClass().getClassLoader(),
+                new Class<?>[]{statementInterface(statement)}, handler);
+    }
+
+    private static Class<?> statementInterface(Statement statement) {
+        if (statement instanceof CallableStatement) {
+            return CallableStatement.class;
+        }
+        return statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+    }
+
+    /**
+     * 和 mybatis 的 PreparedStatementLogger 一样，记录 set*(parameterIndex, value, ...) 绑定的参数值，
+     * setNull(parameterIndex, sqlType) 记为 {@link SqlNull}，回放时按同样的 sqlType 绑定
+     *
+     * @param onSet 参数序号(从 1 开始)和绑定的值
+     */
+    static PreparedStatement recordParameters(PreparedStatement statement, ObjIntConsumer<Object> onSet) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            Object result = invoke(statement, method, args);
+            if (args != null && args.length >= 2 && args[0] instanceof Integer && method.getName().startsWith("set")) {
+                onSet.accept("setNull".equals(method.getName()) ? SqlNull.of((Integer) args[1]) : args[1], (Integer) args[0]);
+            }
+            return result;
+        };
+        return (PreparedStatement) Proxy.newProxyInstance(statement.getClass().getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, handler);
+    }
+
+    /**
+     * 包装 ResultSet，每次 next() 返回 true 时回调 onRow
+     */
+    static ResultSet wrapResultSet(ResultSet resultSet, Runnable onRow) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            Object result = invoke(resultSet, method, args);
+            if (Boolean.TRUE.equals(result) && "next".equals(method.getName())) {
+                onRow.run();
+            }
+            return result;
+        };
+        return (ResultSet) Proxy.newProxyInstance(resultSet.getClass().getClassLoader(),
+                new Class<?>[]{ResultSet.class}, handler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+}
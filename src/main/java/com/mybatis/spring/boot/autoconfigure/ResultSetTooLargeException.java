@@ -0,0 +1,17 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import org.apache.ibatis.exceptions.PersistenceException;
+
+/**
+ * 查询结果超过 mybatis.result-guard 配置的最大行数时抛出，避免把整个大结果集加载到内存
+ *
+ * @author spafka
+ */
+public class ResultSetTooLargeException extends PersistenceException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ResultSetTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,54 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import java.util.AbstractMap;
+import java.util.Map;
+
+/**
+ * 单个 statement 的结果集行数限制，0 表示不限制
+ *
+ * @author spafka
+ */
+public final class RowLimits {
+
+    public static final RowLimits UNLIMITED = new RowLimits(0, 0);
+
+    private final long warnRows;
+
+    private final long maxRows;
+
+    public RowLimits(long warnRows, long maxRows) {
+        this.warnRows = Math.max(0, warnRows);
+        this.maxRows = Math.max(0, maxRows);
+    }
+
+    /**
+     * 解析 pattern:warnRows:maxRows，eg: com.acme.report.*:50000:200000
+     *
+     * @return pattern 和对应的限制
+     */
+    static Map.Entry<String, RowLimits> parse(String value) {
+        String[] parts = value.trim().split(":");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("namespace limit must be pattern:warnRows:maxRows, got " + value);
+        }
+        return new AbstractMap.SimpleImmutableEntry<>(parts[0].trim(),
+                new RowLimits(Long.parseLong(parts[1].trim()), Long.parseLong(parts[2].trim())));
+    }
+
+    public long getWarnRows() {
+        return warnRows;
+    }
+
+    public long getMaxRows() {
+        return maxRows;
+    }
+
+    public boolean isUnlimited() {
+        return warnRows == 0 && maxRows == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "warnRows=" + warnRows + ", maxRows=" + maxRows;
+    }
+}
@@ -0,0 +1,147 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import com.mybatis.spring.boot.autoconfigure.capture.SqlCapture;
+import com.mybatis.spring.boot.autoconfigure.capture.SqlNull;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.StatementType;
+import org.apache.ibatis.plugin.*;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.type.JdbcType;
+
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * 录制 sql 的执行，见 {@link SqlCapture}。parameterize 时代理 PreparedStatement 的 set* 方法，
+ * 记录 TypeHandler 实际绑定的值(和 mybatis 的 PreparedStatementLogger 一样)，回放时按相同的值绑定；
+ * 没有经过 parameterize 的执行从 BoundSql 中取 TypeHandler 转换之前的值。
+ * batch 中的每一条按单独执行记录，存储过程不录制
+ *
+ * @author spafka
+ */
+@Intercepts({@Signature(type = StatementHandler.class, method = "parameterize", args = {Statement.class}),
+        @Signature(type = StatementHandler.class, method = "query", args = {Statement.class, ResultHandler.class}),
+        @Signature(type = StatementHandler.class, method = "queryCursor", args = {Statement.class}),
+        @Signature(type = StatementHandler.class, method = "update", args = {Statement.class}),
+        @Signature(type = StatementHandler.class, method = "batch", args = {Statement.class})})
+public class SqlCaptureInterceptor implements Interceptor {
+
+    private final SqlCapture capture;
+
+    private final Configuration configuration;
+
+    private final String dataSource;
+
+    /**
+     * parameterize 记录的参数，同一个 StatementHandler 随后的 query / update / batch 使用
+     */
+    private final ThreadLocal<BoundParameters> boundParameters = new ThreadLocal<>();
+
+    public SqlCaptureInterceptor(SqlCapture capture, Configuration configuration, String dataSource) {
+        this.capture = capture;
+        this.configuration = configuration;
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        if (!capture.isCapturing()) {
+            return invocation.proceed();
+        }
+        StatementHandler statementHandler = (StatementHandler) invocation.getTarget();
+        MappedStatement mappedStatement = StatementHandlers.mappedStatement(statementHandler);
+        if (mappedStatement == null || mappedStatement.getStatementType() == StatementType.CALLABLE) {
+            return invocation.proceed();
+        }
+        if ("parameterize".equals(invocation.getMethod().getName())) {
+            return parameterize(invocation, statementHandler);
+        }
+        BoundSql boundSql = statementHandler.getBoundSql();
+        BoundParameters bound = boundParameters.get();
+        boundParameters.remove();
+        // 在执行前取参数值，insert 之后回填的主键不应该出现在录制的参数中
+        Object[] parameters = bound != null && bound.statementHandler == statementHandler ? bound.values() : parameters(boundSql);
+        long start = System.nanoTime();
+        try {
+            return invocation.proceed();
+        } finally {
+            capture.record(dataSource, mappedStatement.getId(), boundSql.getSql(), parameters, start, System.nanoTime() - start);
+        }
+    }
+
+    private Object parameterize(Invocation invocation, StatementHandler statementHandler) throws Throwable {
+        Object[] args = invocation.getArgs();
+        if (!(args[0] instanceof PreparedStatement)) {
+            return invocation.proceed();
+        }
+        List<ParameterMapping> parameterMappings = statementHandler.getBoundSql().getParameterMappings();
+        BoundParameters bound = new BoundParameters(statementHandler, parameterMappings == null ? 0 : parameterMappings.size());
+        args[0] = ResultSetProxies.recordParameters((PreparedStatement) args[0], bound::set);
+        boundParameters.remove();
+        Object result = invocation.proceed();
+        boundParameters.set(bound);
+        return result;
+    }
+
+    private Object[] parameters(BoundSql boundSql) {
+        List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
+        if (parameterMappings == null) {
+            return new Object[0];
+        }
+        Object[] parameters = new Object[parameterMappings.size()];
+        for (int i = 0; i < parameters.length; i++) {
+            ParameterMapping parameterMapping = parameterMappings.get(i);
+            Object value = BoundSqlParameters.value(configuration, boundSql, parameterMapping);
+            if (value == null) {
+                // 和 BaseTypeHandler 一样，null 按参数的 jdbcType 绑定，没有时用 jdbcTypeForNull
+                JdbcType jdbcType = parameterMapping.getJdbcType() != null ? parameterMapping.getJdbcType() : configuration.getJdbcTypeForNull();
+                value = SqlNull.of(jdbcType.TYPE_CODE);
+            }
+            parameters[i] = value;
+        }
+        return parameters;
+    }
+
+    @Override
+    public Object plugin(Object target) {
+        return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+
+    }
+
+    private static final class BoundParameters {
+
+        private final StatementHandler statementHandler;
+
+        private Object[] values;
+
+        private int size;
+
+        BoundParameters(StatementHandler statementHandler, int expected) {
+            this.statementHandler = statementHandler;
+            this.values = new Object[expected];
+        }
+
+        void set(Object value, int parameterIndex) {
+            if (parameterIndex > values.length) {
+                values = Arrays.copyOf(values, Math.max(parameterIndex, values.length * 2));
+            }
+            values[parameterIndex - 1] = value;
+            size = Math.max(size, parameterIndex);
+        }
+
+        Object[] values() {
+            return size == values.length ? values : Arrays.copyOf(values, size);
+        }
+    }
+}
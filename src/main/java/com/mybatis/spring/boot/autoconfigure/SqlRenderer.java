@@ -0,0 +1,322 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import com.mybatis.spring.boot.autoconfigure.sql.SqlFormatter;
+import com.mybatis.spring.boot.autoconfigure.sql.SqlLexer;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.session.Configuration;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 把 BoundSql 中的 '?' 替换为参数值输出：按 {@link SqlLexer} 的 token 遍历 sql 模板，遇到占位符时才取对应的参数值，
+ * 字符串中的 '?'、参数值中的 '$' 等都不会影响替换。
+ * <p>
+ * keep &gt; 0 时缩写长的 IN (...) 列表和多行 VALUES：只输出前后各 keep 个元素，中间写成 {@code /* 4990 more *&#47;}，
+ * 被省略的参数值不会被读取和格式化
+ * <pre>
+ * id in (1, 2, 3, /* 4994 more *&#47; 4998, 4999, 5000)
+ * </pre>
+ *
+ * @author spafka
+ */
+public class SqlRenderer {
+
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern(MybatisSqlCompletePrintInterceptor.DEFAULT_DATETIME_FORMAT);
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE;
+
+    private static final int MAX_DEPTH = 64;
+
+    private final Configuration configuration;
+
+    private final BoundSql boundSql;
+
+    /**
+     * 长列表前后各保留的元素个数，0 表示不缩写
+     */
+    private final int keep;
+
+    public SqlRenderer(Configuration configuration, BoundSql boundSql, int keep) {
+        this.configuration = configuration;
+        this.boundSql = boundSql;
+        this.keep = Math.max(0, keep);
+    }
+
+    /**
+     * @param pretty 是否用 {@link SqlFormatter} 换行缩进，否则只规整空白
+     */
+    public String render(boolean pretty) {
+        String sql = boundSql.getSql();
+        StringBuilder sb = new StringBuilder(sql == null ? 0 : sql.length() + (sql.length() >> 2));
+        try {
+            render(sb, pretty);
+        } catch (IOException e) {
+            // StringBuilder 不会抛出 IOException
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 直接写入 out，不生成完整的 sql 字符串；配合 {@link com.mybatis.spring.boot.autoconfigure.sql.ChunkedWriter}
+     * 输出很长的 sql 时内存占用只和块大小有关
+     */
+    public void render(Appendable out, boolean pretty) throws IOException {
+        render(new SqlFormatter(out, pretty));
+    }
+
+    public void render(SqlFormatter out) throws IOException {
+        String sql = boundSql.getSql();
+        if (sql == null || sql.isEmpty() || configuration == null) {
+            return;
+        }
+        List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
+        if (parameterMappings == null) {
+            parameterMappings = Collections.emptyList();
+        }
+        List<Elision> elisions = keep > 0 ? findElisions(sql, keep) : Collections.emptyList();
+
+        SqlLexer lexer = new SqlLexer(sql);
+        int parameter = 0;
+        int nextElision = 0;
+        while (lexer.next()) {
+            if (nextElision < elisions.size() && lexer.start() >= elisions.get(nextElision).start) {
+                Elision elision = elisions.get(nextElision);
+                String comment = "/* " + elision.elements + " more */";
+                out.token(SqlLexer.Type.WHITESPACE, " ", 0, 1);
+                out.token(SqlLexer.Type.COMMENT, comment, 0, comment.length());
+                out.token(SqlLexer.Type.WHITESPACE, " ", 0, 1);
+                parameter += elision.placeholders;
+                lexer.skipTo(elision.end);
+                // 跳过被省略部分中嵌套的列表
+                do {
+                    nextElision++;
+                } while (nextElision < elisions.size() && elisions.get(nextElision).start < elision.end);
+                continue;
+            }
+            if (lexer.type() == SqlLexer.Type.PLACEHOLDER) {
+                value(parameterMappings, parameter++, out);
+            } else {
+                out.token(lexer.type(), sql, lexer.start(), lexer.end());
+            }
+        }
+        out.finish();
+    }
+
+    private void value(List<ParameterMapping> parameterMappings, int index, SqlFormatter out) throws IOException {
+        if (index >= parameterMappings.size() || parameterMappings.get(index).getMode() == ParameterMode.OUT) {
+            out.token(SqlLexer.Type.PLACEHOLDER, "?", 0, 1);
+            return;
+        }
+        Object value = BoundSqlParameters.value(configuration, boundSql, parameterMappings.get(index));
+        if (value instanceof String) {
+            quote((String) value, out);
+        } else if (value instanceof Date) {
+            LocalDateTime localDateTime = ((Date) value).toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime();
+            quote(DATE_TIME_FORMATTER.format(localDateTime), out);
+        } else if (value instanceof LocalDateTime) {
+            quote(DATE_TIME_FORMATTER.format((LocalDateTime) value), out);
+        } else if (value instanceof LocalDate) {
+            quote(DATE_FORMATTER.format((LocalDate) value), out);
+        } else {
+            // 参数值作为字面量写入
+            String text = String.valueOf(value);
+            out.token(SqlLexer.Type.NUMBER, text, 0, text.length());
+        }
+    }
+
+    /**
+     * 加上单引号，值中的单引号写成两个，不复制字符串
+     */
+    private static void quote(String value, SqlFormatter out) throws IOException {
+        out.token(SqlLexer.Type.STRING, "'", 0, 1);
+        int from = 0;
+        int quote;
+        while ((quote = value.indexOf('\'', from)) >= 0) {
+            out.token(SqlLexer.Type.STRING, value, from, quote + 1);
+            out.token(SqlLexer.Type.STRING, "'", 0, 1);
+            from = quote + 1;
+        }
+        out.token(SqlLexer.Type.STRING, value, from, value.length());
+        out.token(SqlLexer.Type.STRING, "'", 0, 1);
+    }
+
+    /**
+     * 扫描一遍 sql 模板(不读取参数值)，找出元素个数超过 2 * keep 的 IN 列表和 VALUES，按开始位置排序
+     */
+    static List<Elision> findElisions(String sql, int keep) {
+        List<Elision> elisions = null;
+        ListScan[] scans = new ListScan[MAX_DEPTH];
+        SqlLexer lexer = new SqlLexer(sql);
+        int depth = 0;
+        int placeholders = 0;
+        boolean afterIn = false;
+        while (lexer.next()) {
+            SqlLexer.Type type = lexer.type();
+            if (type == SqlLexer.Type.WHITESPACE || type == SqlLexer.Type.COMMENT) {
+                continue;
+            }
+            ListScan scan = depth < MAX_DEPTH && scans[depth] != null && scans[depth].active ? scans[depth] : null;
+            boolean wasAfterIn = afterIn;
+            afterIn = false;
+
+            if (scan != null && scan.in && scan.first) {
+                scan.first = false;
+                if (lexer.is("select")) {
+                    // in (select ...) 不是值列表
+                    scan.active = false;
+                    scan = null;
+                }
+            }
+            if (scan != null && !scan.in && !lexer.is('(') && !lexer.is(',')) {
+                // VALUES 的行之间只有 ',' 和 '('，其他 token 表示 VALUES 结束
+                elisions = scan.finish(elisions);
+                scan = null;
+            }
+
+            if (type == SqlLexer.Type.PLACEHOLDER) {
+                placeholders++;
+            } else if (lexer.is(',')) {
+                if (scan != null) {
+                    scan.comma(lexer.end(), placeholders);
+                }
+            } else if (lexer.is('(')) {
+                depth++;
+                if (wasAfterIn && depth < MAX_DEPTH) {
+                    scans[depth] = start(scans[depth], true, keep);
+                }
+            } else if (lexer.is(')')) {
+                if (scan != null) {
+                    elisions = scan.finish(elisions);
+                }
+                depth = Math.max(0, depth - 1);
+            } else if (type == SqlLexer.Type.WORD) {
+                afterIn = lexer.is("in");
+                if ((lexer.is("values") || lexer.is("value")) && depth < MAX_DEPTH) {
+                    scans[depth] = start(scans[depth], false, keep);
+                }
+            }
+        }
+        for (ListScan scan : scans) {
+            if (scan != null && scan.active) {
+                elisions = scan.finish(elisions);
+            }
+        }
+        if (elisions == null) {
+            return Collections.emptyList();
+        }
+        elisions.sort(Comparator.comparingInt(elision -> elision.start));
+        return elisions;
+    }
+
+    private static ListScan start(ListScan scan, boolean in, int keep) {
+        if (scan == null) {
+            scan = new ListScan(keep);
+        }
+        scan.reset(in);
+        return scan;
+    }
+
+    /**
+     * 省略的部分：[start, end) 为模板中的位置，其中包含 elements 个元素、placeholders 个占位符
+     */
+    static final class Elision {
+
+        final int start;
+
+        final int end;
+
+        final int elements;
+
+        final int placeholders;
+
+        Elision(int start, int end, int elements, int placeholders) {
+            this.start = start;
+            this.end = end;
+            this.elements = elements;
+            this.placeholders = placeholders;
+        }
+    }
+
+    /**
+     * 一个 IN 列表或者 VALUES 中的元素分隔符，只记录第 keep 个 ',' 和最后 keep 个 ','，和列表长度无关
+     */
+    private static final class ListScan {
+
+        private final int keep;
+
+        private final int[] tailEnds;
+
+        private final int[] tailPlaceholders;
+
+        private boolean active;
+
+        private boolean in;
+
+        /**
+         * IN 列表中还没有读到第一个 token
+         */
+        private boolean first;
+
+        private int commas;
+
+        private int headEnd;
+
+        private int headPlaceholders;
+
+        ListScan(int keep) {
+            this.keep = keep;
+            this.tailEnds = new int[keep];
+            this.tailPlaceholders = new int[keep];
+        }
+
+        void reset(boolean in) {
+            this.active = true;
+            this.in = in;
+            this.first = in;
+            this.commas = 0;
+        }
+
+        /**
+         * @param end         ',' 之后的位置
+         * @param placeholders 到 ',' 为止的占位符个数
+         */
+        void comma(int end, int placeholders) {
+            commas++;
+            if (commas == keep) {
+                headEnd = end;
+                headPlaceholders = placeholders;
+            }
+            int slot = (commas - 1) % keep;
+            tailEnds[slot] = end;
+            tailPlaceholders[slot] = placeholders;
+        }
+
+        List<Elision> finish(List<Elision> elisions) {
+            active = false;
+            int elements = commas + 1;
+            if (elements <= 2 * keep) {
+                return elisions;
+            }
+            // 最后 keep 个元素之前的 ',' 是第 commas + 1 - keep 个，仍在环形数组中
+            int slot = (commas - keep) % keep;
+            if (elisions == null) {
+                elisions = new ArrayList<>();
+            }
+            elisions.add(new Elision(headEnd, tailEnds[slot], elements - 2 * keep, tailPlaceholders[slot] - headPlaceholders));
+            return elisions;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次 http 请求内执行的 sql 汇总：语句数、数据库耗时、行数、最慢的语句，由 sql 拦截器累加，
+ * 在 ControllerAop 中输出。对象只在当前线程内读写，不需要加锁
+ *
+ * @author spafka
+ */
+public final class SqlRequestSummary {
+
+    private static final ThreadLocal<SqlRequestSummary> CURRENT = new ThreadLocal<>();
+
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * 同一个请求可能被 filter、aop 多次 begin，只有最外层 end 时才清除
+     */
+    private int depth;
+
+    private int statements;
+
+    private long dbNanos;
+
+    private long rows;
+
+    private long slowestNanos;
+
+    private String slowestStatement;
+
+    /**
+     * 当前请求的入口，ControllerAop 中为 类名.方法名，只经过 filter 时为 请求方法 + uri
+     */
+    private String endpoint;
+
+    private SqlRequestSummary() {
+    }
+
+    public static SqlRequestSummary begin() {
+        SqlRequestSummary summary = CURRENT.get();
+        if (summary == null) {
+            summary = new SqlRequestSummary();
+            CURRENT.set(summary);
+        }
+        summary.depth++;
+        return summary;
+    }
+
+    public static SqlRequestSummary current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * sql 拦截器调用，当前线程不在请求中时忽略
+     */
+    public static void record(String statementId, long nanos, long rows) {
+        SqlRequestSummary summary = CURRENT.get();
+        if (summary == null) {
+            return;
+        }
+        summary.statements++;
+        summary.dbNanos += nanos;
+        summary.rows += rows;
+        if (summary.slowestStatement == null || nanos > summary.slowestNanos) {
+            summary.slowestNanos = nanos;
+            summary.slowestStatement = statementId;
+        }
+    }
+
+    /**
+     * 当前线程所在请求的入口，不在请求中时为空
+     */
+    public static String currentEndpoint() {
+        SqlRequestSummary summary = CURRENT.get();
+        return summary == null ? null : summary.endpoint;
+    }
+
+    public void end() {
+        if (--depth <= 0) {
+            CURRENT.remove();
+        }
+    }
+
+    public int getStatements() {
+        return statements;
+    }
+
+    public long getDbNanos() {
+        return dbNanos;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getSlowestNanos() {
+        return slowestNanos;
+    }
+
+    public String getSlowestStatement() {
+        return slowestStatement;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public long getElapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * eg: sql 3 statements, db 12ms / 40ms (30%), 25 rows, slowest com.acme.UserMapper.find 9ms
+     */
+    public String summaryLine() {
+        long elapsedNanos = getElapsedNanos();
+        StringBuilder sb = new StringBuilder(128)
+                .append("sql ").append(statements).append(" statements, db ")
+                .append(TimeUnit.NANOSECONDS.toMillis(dbNanos)).append("ms / ")
+                .append(TimeUnit.NANOSECONDS.toMillis(elapsedNanos)).append("ms (")
+                .append(elapsedNanos == 0 ? 0 : dbNanos * 100 / elapsedNanos).append("%), ")
+                .append(rows).append(" rows");
+        if (slowestStatement != null) {
+            sb.append(", slowest ").append(slowestStatement).append(' ')
+                    .append(TimeUnit.NANOSECONDS.toMillis(slowestNanos)).append("ms");
+        }
+        return sb.toString();
+    }
+}
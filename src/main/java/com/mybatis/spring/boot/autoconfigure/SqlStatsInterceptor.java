@@ -0,0 +1,139 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import com.mybatis.spring.boot.autoconfigure.sql.SqlFingerprint;
+import com.mybatis.spring.boot.autoconfigure.stats.RegressionDetector;
+import com.mybatis.spring.boot.autoconfigure.stats.SqlStatsRegistry;
+import com.mybatis.spring.boot.autoconfigure.stats.StatementStats;
+import com.mybatis.spring.boot.autoconfigure.stats.Timing;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.*;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Executor 层的统计插件，把 MappedStatement.getBoundSql(动态 sql 的 OGNL 计算、拼接) 和真正的执行分开计时，
+ * 用来判断慢的是拼 sql 还是数据库
+ *
+ * @author spafka
+ */
+@Intercepts({@Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class}),
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class})})
+public class SqlStatsInterceptor implements Interceptor {
+
+    private final SqlStatsRegistry registry;
+
+    private final String dataSource;
+
+    /**
+     * 耗时退化检测，未开启时为空
+     */
+    private RegressionDetector regressionDetector;
+
+    public SqlStatsInterceptor(SqlStatsRegistry registry, String dataSource) {
+        this.registry = registry;
+        this.dataSource = dataSource;
+    }
+
+    public void setRegressionDetector(RegressionDetector regressionDetector) {
+        this.regressionDetector = regressionDetector;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        Object[] args = invocation.getArgs();
+        MappedStatement ms = (MappedStatement) args[0];
+        StatementStats stats = registry.stats(dataSource, ms);
+
+        if (args.length == 4) {
+            // 参考 BaseExecutor.query，自己生成 BoundSql 后调用 6 个参数的 query，这样 getBoundSql 只执行一次
+            Executor executor = (Executor) invocation.getTarget();
+            Object parameter = args[1];
+            RowBounds rowBounds = (RowBounds) args[2];
+            ResultHandler<?> resultHandler = (ResultHandler<?>) args[3];
+
+            long buildStart = System.nanoTime();
+            BoundSql boundSql = ms.getBoundSql(parameter);
+            stats.getBuild().record(System.nanoTime() - buildStart);
+            String fingerprint = fingerprint(stats, boundSql);
+
+            CacheKey cacheKey = executor.createCacheKey(ms, parameter, rowBounds, boundSql);
+            return execute(stats, fingerprint, () -> executor.query(ms, parameter, rowBounds, resultHandler, cacheKey, boundSql));
+        }
+
+        String fingerprint = args.length == 6 ? fingerprint(stats, (BoundSql) args[5]) : null;
+        // update 的 BoundSql 在 StatementHandler 创建时生成，这里只能记录执行耗时
+        return execute(stats, fingerprint, invocation::proceed);
+    }
+
+    /**
+     * 动态 sql 按指纹分别计时，指纹的计算不算在执行耗时中
+     */
+    private static String fingerprint(StatementStats stats, BoundSql boundSql) {
+        return stats.isDynamic() ? SqlFingerprint.of(boundSql.getSql()) : null;
+    }
+
+    private Object execute(StatementStats stats, String fingerprint, Execution execution) throws Throwable {
+        Timing shape = fingerprint == null ? null : stats.shape(fingerprint);
+        long start = System.nanoTime();
+        Object result = null;
+        boolean failed = true;
+        try {
+            result = execution.run();
+            failed = false;
+            return result;
+        } catch (Throwable e) {
+            stats.getErrors().increment();
+            throw e;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            stats.getExecute().record(nanos);
+            if (stats.getLatency() != null) {
+                stats.getLatency().record(nanos);
+            }
+            if (shape != null) {
+                shape.record(nanos);
+            }
+            if (stats.getWindow() != null) {
+                stats.getWindow().record(nanos, failed);
+            }
+            // 失败的执行不计入基线，报错通常很快
+            if (regressionDetector != null && !failed) {
+                regressionDetector.record(stats, fingerprint, nanos, rows(result));
+            }
+        }
+    }
+
+    /**
+     * 查询返回的行数或者更新的行数，其他情况(eg: 使用 ResultHandler)未知
+     */
+    private static long rows(Object result) {
+        if (result instanceof List) {
+            return ((List<?>) result).size();
+        }
+        if (result instanceof Integer) {
+            return (Integer) result;
+        }
+        return -1;
+    }
+
+    @Override
+    public Object plugin(Object target) {
+        return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+
+    }
+
+    private interface Execution {
+        Object run() throws Throwable;
+    }
+}
@@ -0,0 +1,51 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import org.apache.ibatis.mapping.MappedStatement;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 按 statement id 的 include / exclude 过滤，模式语法见 {@link NamespaceTrie}。
+ * 结果按 MappedStatement 缓存(MappedStatement 没有重写 equals/hashCode，相当于按引用查找)，
+ * 除第一次外每次过滤只是一次 map 查找
+ *
+ * @author spafka
+ */
+public final class StatementFilter {
+
+    private final NamespaceTrie<Boolean> includes = new NamespaceTrie<>();
+
+    private final NamespaceTrie<Boolean> excludes = new NamespaceTrie<>();
+
+    private final ConcurrentMap<MappedStatement, Boolean> cache = new ConcurrentHashMap<>();
+
+    public StatementFilter(List<String> includes, List<String> excludes) {
+        includes.forEach(pattern -> this.includes.put(pattern, Boolean.TRUE));
+        excludes.forEach(pattern -> this.excludes.put(pattern, Boolean.TRUE));
+    }
+
+    public boolean isEmpty() {
+        return includes.isEmpty() && excludes.isEmpty();
+    }
+
+    public boolean matches(MappedStatement mappedStatement) {
+        if (mappedStatement == null) {
+            return includes.isEmpty();
+        }
+        Boolean matched = cache.get(mappedStatement);
+        if (matched == null) {
+            matched = matches(mappedStatement.getId());
+            cache.put(mappedStatement, matched);
+        }
+        return matched;
+    }
+
+    public boolean matches(String statementId) {
+        if (excludes.find(statementId) != null) {
+            return false;
+        }
+        return includes.isEmpty() || includes.find(statementId) != null;
+    }
+}
@@ -0,0 +1,66 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.statement.BaseStatementHandler;
+import org.apache.ibatis.executor.statement.RoutingStatementHandler;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Plugin;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+
+/**
+ * 从 StatementHandler 中取出 MappedStatement、Executor，StatementHandler 可能被其它插件代理过
+ *
+ * @author spafka
+ */
+final class StatementHandlers {
+
+    private static final Field PLUGIN_TARGET = field(Plugin.class, "target");
+
+    private static final Field ROUTING_DELEGATE = field(RoutingStatementHandler.class, "delegate");
+
+    private static final Field MAPPED_STATEMENT = field(BaseStatementHandler.class, "mappedStatement");
+
+    private static final Field EXECUTOR = field(BaseStatementHandler.class, "executor");
+
+    private StatementHandlers() {
+    }
+
+    static MappedStatement mappedStatement(StatementHandler statementHandler) {
+        BaseStatementHandler handler = unwrap(statementHandler);
+        return handler == null ? null : (MappedStatement) ReflectionUtils.getField(MAPPED_STATEMENT, handler);
+    }
+
+    /**
+     * 创建 StatementHandler 的 Executor(没有被插件代理)，同一个 SqlSession 的 getTransaction() 相同
+     */
+    static Executor executor(StatementHandler statementHandler) {
+        BaseStatementHandler handler = unwrap(statementHandler);
+        return handler == null ? null : (Executor) ReflectionUtils.getField(EXECUTOR, handler);
+    }
+
+    private static BaseStatementHandler unwrap(StatementHandler statementHandler) {
+        Object handler = statementHandler;
+        while (Proxy.isProxyClass(handler.getClass())) {
+            InvocationHandler invocationHandler = Proxy.getInvocationHandler(handler);
+            if (!(invocationHandler instanceof Plugin)) {
+                return null;
+            }
+            handler = ReflectionUtils.getField(PLUGIN_TARGET, invocationHandler);
+        }
+        if (handler instanceof RoutingStatementHandler) {
+            handler = ReflectionUtils.getField(ROUTING_DELEGATE, handler);
+        }
+        return handler instanceof BaseStatementHandler ? (BaseStatementHandler) handler : null;
+    }
+
+    private static Field field(Class<?> clazz, String name) {
+        Field field = ReflectionUtils.findField(clazz, name);
+        ReflectionUtils.makeAccessible(field);
+        return field;
+    }
+}
@@ -0,0 +1,117 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import org.apache.ibatis.cursor.Cursor;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.function.Consumer;
+
+/**
+ * 包装 StatementHandler.queryCursor 返回的 Cursor，记录首行耗时、读取行数、读完耗时和 Cursor 打开的时长，
+ * Cursor 关闭时(包括 SqlSession 关闭时自动关闭)回调一次
+ *
+ * @author spafka
+ */
+public class TimedCursor<T> implements Cursor<T> {
+
+    private final Cursor<T> delegate;
+
+    private final long openNanos;
+
+    private final Consumer<TimedCursor<T>> onClose;
+
+    private long firstRowNanos;
+
+    private long lastRowNanos;
+
+    private long closeNanos;
+
+    private long rows;
+
+    private boolean closed;
+
+    public TimedCursor(Cursor<T> delegate, long openNanos, Consumer<TimedCursor<T>> onClose) {
+        this.delegate = delegate;
+        this.openNanos = openNanos;
+        this.onClose = onClose;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return delegate.isOpen();
+    }
+
+    @Override
+    public boolean isConsumed() {
+        return delegate.isConsumed();
+    }
+
+    @Override
+    public int getCurrentIndex() {
+        return delegate.getCurrentIndex();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        Iterator<T> iterator = delegate.iterator();
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public T next() {
+                T next = iterator.next();
+                lastRowNanos = System.nanoTime();
+                if (rows++ == 0) {
+                    firstRowNanos = lastRowNanos;
+                }
+                return next;
+            }
+
+            @Override
+            public void remove() {
+                iterator.remove();
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            delegate.close();
+        } finally {
+            if (!closed) {
+                closed = true;
+                closeNanos = System.nanoTime();
+                onClose.accept(this);
+            }
+        }
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * 从执行到读到第一行的耗时，没有读到数据时为 -1
+     */
+    public long getFirstRowNanos() {
+        return rows == 0 ? -1 : firstRowNanos - openNanos;
+    }
+
+    /**
+     * 从执行到读到最后一行的耗时
+     */
+    public long getStreamingNanos() {
+        return rows == 0 ? 0 : lastRowNanos - openNanos;
+    }
+
+    /**
+     * 从执行到关闭，Cursor 占用连接的时长
+     */
+    public long getOpenNanos() {
+        return closeNanos - openNanos;
+    }
+}
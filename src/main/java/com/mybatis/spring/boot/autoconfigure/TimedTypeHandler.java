@@ -0,0 +1,80 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import com.mybatis.spring.boot.autoconfigure.stats.TypeHandlerStats;
+import org.apache.ibatis.type.JdbcType;
+import org.apache.ibatis.type.TypeHandler;
+
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 包装原 TypeHandler，记录 setParameter / getResult 的次数和耗时
+ *
+ * @author spafka
+ */
+public class TimedTypeHandler<T> implements TypeHandler<T> {
+
+    private final TypeHandler<T> delegate;
+
+    private final TypeHandlerStats.Handler stats;
+
+    public TimedTypeHandler(TypeHandler<T> delegate, TypeHandlerStats stats, String dataSource) {
+        this.delegate = delegate;
+        this.stats = stats.handler(dataSource, delegate.getClass().getName());
+    }
+
+    public TypeHandler<T> getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void setParameter(PreparedStatement ps, int i, T parameter, JdbcType jdbcType) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            delegate.setParameter(ps, i, parameter, jdbcType);
+        } finally {
+            stats.calls(CurrentStatement.get()).getSetParameter().record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public T getResult(ResultSet rs, String columnName) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getResult(rs, columnName);
+        } finally {
+            recordResult(start);
+        }
+    }
+
+    @Override
+    public T getResult(ResultSet rs, int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getResult(rs, columnIndex);
+        } finally {
+            recordResult(start);
+        }
+    }
+
+    @Override
+    public T getResult(CallableStatement cs, int columnIndex) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getResult(cs, columnIndex);
+        } finally {
+            recordResult(start);
+        }
+    }
+
+    private void recordResult(long start) {
+        stats.calls(CurrentStatement.get()).getGetResult().record(System.nanoTime() - start);
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+}
@@ -0,0 +1,171 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import com.mybatis.spring.boot.autoconfigure.stats.TypeHandlerStats;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.*;
+import org.apache.ibatis.plugin.*;
+import org.apache.ibatis.scripting.defaults.RawSqlSource;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.type.JdbcType;
+import org.apache.ibatis.type.TypeHandler;
+import org.apache.ibatis.type.TypeHandlerRegistry;
+import org.apache.ibatis.type.UnknownTypeHandler;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.util.*;
+
+/**
+ * TypeHandler 计时：{@link #instrument(Configuration)} 把 TypeHandlerRegistry 以及已经解析好的
+ * ParameterMapping / ResultMapping 中的 TypeHandler 替换成 {@link TimedTypeHandler}，
+ * 拦截器本身只负责在 Executor 执行期间记录当前的 statement id，让耗时可以按 statement 归类
+ *
+ * @author spafka
+ */
+@Intercepts({@Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class}),
+        @Signature(type = Executor.class, method = "queryCursor", args = {MappedStatement.class, Object.class, RowBounds.class}),
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class})})
+@Slf4j
+public class TypeHandlerTimingInterceptor implements Interceptor {
+
+    private final TypeHandlerStats stats;
+
+    private final String dataSource;
+
+    /**
+     * 同一个 TypeHandler 实例只包装一次
+     */
+    private final Map<TypeHandler<?>, TypeHandler<?>> wrapped = new IdentityHashMap<>();
+
+    public TypeHandlerTimingInterceptor(TypeHandlerStats stats, String dataSource) {
+        this.stats = stats;
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        MappedStatement ms = (MappedStatement) invocation.getArgs()[0];
+        String previous = CurrentStatement.enter(ms.getId());
+        try {
+            return invocation.proceed();
+        } finally {
+            CurrentStatement.restore(previous);
+        }
+    }
+
+    /**
+     * 启动阶段调用，此时还没有请求，直接替换各个 map 中的值
+     */
+    public synchronized void instrument(Configuration configuration) {
+        TypeHandlerRegistry registry = configuration.getTypeHandlerRegistry();
+
+        Map<JdbcType, TypeHandler<?>> jdbcTypeHandlers = fieldValue(registry, "JDBC_TYPE_HANDLER_MAP");
+        wrapValues(jdbcTypeHandlers);
+        Map<Class<?>, TypeHandler<?>> allTypeHandlers = fieldValue(registry, "ALL_TYPE_HANDLERS_MAP");
+        wrapValues(allTypeHandlers);
+        Map<java.lang.reflect.Type, Map<JdbcType, TypeHandler<?>>> typeHandlers = fieldValue(registry, "TYPE_HANDLER_MAP");
+        for (Map<JdbcType, TypeHandler<?>> byJdbcType : typeHandlers.values()) {
+            // NULL_TYPE_HANDLER_MAP 是不可变的空 map
+            if (byJdbcType != null && !byJdbcType.isEmpty()) {
+                wrapValues(byJdbcType);
+            }
+        }
+
+        // 已经解析好的 mapping 直接持有 TypeHandler 的引用，需要单独替换
+        Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Object value : new ArrayList<Object>(configuration.getMappedStatements())) {
+            // StrictMap 中同名的短 id 会放 Ambiguity 对象
+            if (value instanceof MappedStatement && visited.add(value)) {
+                MappedStatement ms = (MappedStatement) value;
+                instrumentParameterMappings(ms.getParameterMap().getParameterMappings());
+                instrumentSqlSource(ms.getSqlSource());
+            }
+        }
+        for (Object value : new ArrayList<Object>(configuration.getParameterMaps())) {
+            if (value instanceof ParameterMap && visited.add(value)) {
+                instrumentParameterMappings(((ParameterMap) value).getParameterMappings());
+            }
+        }
+        for (Object value : new ArrayList<Object>(configuration.getResultMaps())) {
+            if (value instanceof ResultMap && visited.add(value)) {
+                instrumentResultMappings(((ResultMap) value).getResultMappings());
+            }
+        }
+        log.info("TypeHandler timing enabled for [{}], {} handlers wrapped", dataSource, wrapped.size());
+    }
+
+    private void instrumentSqlSource(SqlSource sqlSource) {
+        if (sqlSource instanceof RawSqlSource) {
+            instrumentSqlSource(fieldValue(sqlSource, "sqlSource"));
+        } else if (sqlSource instanceof StaticSqlSource) {
+            instrumentParameterMappings(fieldValue(sqlSource, "parameterMappings"));
+        }
+        // DynamicSqlSource、ProviderSqlSource 每次执行时从 TypeHandlerRegistry 取，已经被替换
+    }
+
+    private void instrumentParameterMappings(List<ParameterMapping> mappings) {
+        if (mappings == null) {
+            return;
+        }
+        for (ParameterMapping mapping : mappings) {
+            setTypeHandler(mapping, mapping.getTypeHandler());
+        }
+    }
+
+    private void instrumentResultMappings(List<ResultMapping> mappings) {
+        if (mappings == null) {
+            return;
+        }
+        for (ResultMapping mapping : mappings) {
+            setTypeHandler(mapping, mapping.getTypeHandler());
+            instrumentResultMappings(mapping.getComposites());
+        }
+    }
+
+    private void setTypeHandler(Object mapping, TypeHandler<?> typeHandler) {
+        if (typeHandler == null) {
+            return;
+        }
+        Field field = ReflectionUtils.findField(mapping.getClass(), "typeHandler");
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, mapping, wrap(typeHandler));
+    }
+
+    private <K> void wrapValues(Map<K, TypeHandler<?>> handlers) {
+        for (Map.Entry<K, TypeHandler<?>> entry : handlers.entrySet()) {
+            entry.setValue(wrap(entry.getValue()));
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private TypeHandler<?> wrap(TypeHandler<?> typeHandler) {
+        // UnknownTypeHandler 运行时再委托给具体的 TypeHandler，包装它会重复计时
+        if (typeHandler == null || typeHandler instanceof TimedTypeHandler || typeHandler instanceof UnknownTypeHandler) {
+            return typeHandler;
+        }
+        return wrapped.computeIfAbsent(typeHandler, h -> new TimedTypeHandler(h, stats, dataSource));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T fieldValue(Object target, String name) {
+        Field field = ReflectionUtils.findField(target.getClass(), name);
+        ReflectionUtils.makeAccessible(field);
+        return (T) ReflectionUtils.getField(field, target);
+    }
+
+    @Override
+    public Object plugin(Object target) {
+        return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+
+    }
+}
@@ -0,0 +1,94 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import com.mybatis.spring.boot.autoconfigure.stats.ColumnUsage;
+import com.mybatis.spring.boot.autoconfigure.stats.ColumnUsageStats;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.StatementType;
+import org.apache.ibatis.plugin.*;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 多余列检测：每个 statement 第一次执行时比较 ResultSetMetaData 中的列和 ResultMap 实际映射的列，
+ * 结果缓存起来；之后只对有多余列的 statement 统计行数，用来估算浪费的字节数，没有多余列的 statement 不再包装。
+ * 多结果集以及存储过程不做分析
+ *
+ * @author spafka
+ */
+@Intercepts({@Signature(type = StatementHandler.class, method = "query", args = {Statement.class, ResultHandler.class})})
+@Slf4j
+public class UnusedColumnInterceptor implements Interceptor {
+
+    private final ColumnUsageStats stats;
+
+    private final String dataSource;
+
+    private final ConcurrentMap<MappedStatement, ColumnUsage> analyzed = new ConcurrentHashMap<>();
+
+    public UnusedColumnInterceptor(ColumnUsageStats stats, String dataSource) {
+        this.stats = stats;
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        MappedStatement mappedStatement = StatementHandlers.mappedStatement((StatementHandler) invocation.getTarget());
+        if (mappedStatement == null || !analyzable(mappedStatement)) {
+            return invocation.proceed();
+        }
+        ColumnUsage usage = analyzed.get(mappedStatement);
+        if (usage != null && !usage.hasUnusedColumns()) {
+            return invocation.proceed();
+        }
+        Object[] args = invocation.getArgs();
+        args[0] = ResultSetProxies.wrapStatement((Statement) args[0], rs -> count(usage != null ? usage : analyze(mappedStatement, rs), rs));
+        return invocation.proceed();
+    }
+
+    private static boolean analyzable(MappedStatement mappedStatement) {
+        return mappedStatement.getStatementType() != StatementType.CALLABLE
+                && mappedStatement.getResultSets() == null
+                && mappedStatement.getResultMaps().size() == 1;
+    }
+
+    private ColumnUsage analyze(MappedStatement mappedStatement, ResultSet resultSet) {
+        ColumnUsage usage;
+        try {
+            usage = stats.register(dataSource, ColumnUsageAnalyzer.analyze(mappedStatement, resultSet.getMetaData()));
+            if (usage.hasUnusedColumns()) {
+                log.warn("[{}] {} fetches columns that are never mapped: {}", dataSource, usage.getId(), usage.getUnusedColumns());
+            }
+        } catch (SQLException | RuntimeException e) {
+            log.debug("analyze columns of {} failed", mappedStatement.getId(), e);
+            usage = ColumnUsage.UNKNOWN;
+        }
+        analyzed.put(mappedStatement, usage);
+        return usage;
+    }
+
+    private static ResultSet count(ColumnUsage usage, ResultSet resultSet) {
+        if (!usage.hasUnusedColumns()) {
+            return resultSet;
+        }
+        usage.getExecutions().increment();
+        return ResultSetProxies.wrapResultSet(resultSet, usage.getRows()::increment);
+    }
+
+    @Override
+    public Object plugin(Object target) {
+        return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+
+    }
+}
@@ -0,0 +1,27 @@
+package com.mybatis.spring.boot.autoconfigure.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按访问顺序排列的 LinkedHashMap，超过 maxSize 时淘汰最久没有访问的元素；不是线程安全的，
+ * get 也会修改顺序，多线程使用时需要 {@link java.util.Collections#synchronizedMap} 包装
+ *
+ * @author spafka
+ */
+public class LruMap<K, V> extends LinkedHashMap<K, V> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int maxSize;
+
+    public LruMap(int maxSize) {
+        super(16, 0.75f, true);
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > maxSize;
+    }
+}
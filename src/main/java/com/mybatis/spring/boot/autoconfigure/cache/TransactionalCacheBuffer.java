@@ -0,0 +1,179 @@
+package com.mybatis.spring.boot.autoconfigure.cache;
+
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.plugin.Invocation;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.ClassUtils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 按事务(SqlSession 的 {@link org.apache.ibatis.transaction.Transaction})暂存 {@link TtlCache} 的写入，和 mybatis 的 TransactionalCache 一样：
+ * <ul>
+ * <li>查询结果提交时才放入缓存，回滚时丢弃，其他会话不会读到未提交的数据</li>
+ * <li>事务中执行过 insert / update / delete 的 namespace，提交前本事务不读也不写缓存，提交时失效</li>
+ * <li>spring 管理的事务在真正提交之后(afterCompletion)才生效，SqlSession.commit 在数据库提交之前执行</li>
+ * </ul>
+ * SqlSession 只在一个线程中使用，同一个事务暂存的数据不需要同步
+ *
+ * @author spafka
+ */
+public class TransactionalCacheBuffer<K, V> {
+
+    private static final boolean SPRING_TX_PRESENT = ClassUtils.isPresent(
+            "org.springframework.transaction.support.TransactionSynchronizationManager", TransactionalCacheBuffer.class.getClassLoader());
+
+    private final TtlCache<K, V> cache;
+
+    private final ConcurrentMap<Object, Pending<K, V>> transactions = new ConcurrentHashMap<>();
+
+    public TransactionalCacheBuffer(TtlCache<K, V> cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * 事务中是否写过该 namespace，写过时不能使用共享的缓存
+     */
+    public boolean isWritten(Object transaction, String namespace) {
+        Pending<K, V> pending = transactions.get(transaction);
+        return pending != null && pending.namespaces.contains(namespace);
+    }
+
+    /**
+     * 提交时再以查询前取得的 version 写入，期间 namespace 失效过则不写入
+     */
+    public void put(Object transaction, K key, V value, String namespace, long version, long ttlMillis, long weight) {
+        pending(transaction).puts.add(new Put<>(key, value, namespace, version, ttlMillis, weight));
+    }
+
+    /**
+     * 执行写操作前调用：立即失效(共享缓存中的是提交前的数据，其他会话仍然可以读取)，并且提交时再失效一次
+     */
+    public void write(Object transaction, String namespace) {
+        cache.invalidate(namespace);
+        pending(transaction).namespaces.add(namespace);
+    }
+
+    private Pending<K, V> pending(Object transaction) {
+        return transactions.computeIfAbsent(transaction, t -> new Pending<>());
+    }
+
+    public void commit(Object transaction) {
+        Pending<K, V> pending = transactions.remove(transaction);
+        if (pending == null) {
+            return;
+        }
+        if (SPRING_TX_PRESENT && SpringTransactions.afterCommit(() -> apply(pending))) {
+            return;
+        }
+        apply(pending);
+    }
+
+    public void rollback(Object transaction) {
+        transactions.remove(transaction);
+    }
+
+    private void apply(Pending<K, V> pending) {
+        pending.namespaces.forEach(cache::invalidate);
+        for (Put<K, V> put : pending.puts) {
+            cache.put(put.key, put.value, put.namespace, put.version, put.ttlMillis, put.weight);
+        }
+    }
+
+    /**
+     * 还没有提交或者回滚的事务个数，一直增长说明有 SqlSession 没有关闭
+     */
+    public int getPendingTransactions() {
+        return transactions.size();
+    }
+
+    /**
+     * 拦截 Executor 的 commit(boolean) / rollback(boolean) / close(boolean forceRollback)，
+     * close 时和 CachingExecutor 一样，forceRollback 为 false 时提交
+     */
+    public Object complete(Invocation invocation) throws Throwable {
+        Executor executor = (Executor) invocation.getTarget();
+        if (executor.isClosed()) {
+            // 重复 close 是允许的，关闭之后 getTransaction() 会抛出异常，暂存的数据在第一次 close 时已经处理
+            return invocation.proceed();
+        }
+        Object transaction = executor.getTransaction();
+        String method = invocation.getMethod().getName();
+        boolean close = "close".equals(method);
+        boolean commit = "commit".equals(method) || (close && !(Boolean) invocation.getArgs()[0]);
+        boolean completed = false;
+        try {
+            Object result = invocation.proceed();
+            completed = true;
+            return result;
+        } finally {
+            if (commit && (completed || close)) {
+                commit(transaction);
+            } else {
+                rollback(transaction);
+            }
+        }
+    }
+
+    private static final class Pending<K, V> {
+
+        private final Set<String> namespaces = new HashSet<>();
+
+        private final List<Put<K, V>> puts = new ArrayList<>();
+    }
+
+    private static final class Put<K, V> {
+
+        private final K key;
+
+        private final V value;
+
+        private final String namespace;
+
+        private final long version;
+
+        private final long ttlMillis;
+
+        private final long weight;
+
+        Put(K key, V value, String namespace, long version, long ttlMillis, long weight) {
+            this.key = key;
+            this.value = value;
+            this.namespace = namespace;
+            this.version = version;
+            this.ttlMillis = ttlMillis;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * 单独的类，没有 spring-tx 时不加载
+     */
+    private static final class SpringTransactions {
+
+        /**
+         * @return 当前线程有 spring 事务同步时注册 afterCompletion 回调，提交成功后执行
+         */
+        static boolean afterCommit(Runnable action) {
+            if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+                return false;
+            }
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                        action.run();
+                    }
+                }
+            });
+            return true;
+        }
+    }
+}
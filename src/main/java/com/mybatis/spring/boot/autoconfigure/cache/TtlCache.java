@@ -0,0 +1,180 @@
+package com.mybatis.spring.boot.autoconfigure.cache;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 带过期时间、按 namespace 失效的并发缓存，读写都不加锁：
+ * <ul>
+ * <li>每个 namespace 一个版本号，失效只是把版本号加一，旧版本的条目在读取或者清理时删除</li>
+ * <li>查询前取版本号，写入时版本号已经变化(期间有更新)则不写入，避免把更新前读到的结果放进缓存</li>
+ * <li>条目数或者总权重超过上限时，由一个线程清理过期条目，仍然超出时按最近访问时间淘汰到上限的 90%</li>
+ * </ul>
+ *
+ * @author spafka
+ */
+public class TtlCache<K, V> {
+
+    private final ConcurrentMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    private final AtomicLong weight = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final long maxEntries;
+
+    /**
+     * 0 表示不限制
+     */
+    private final long maxWeight;
+
+    public TtlCache(long maxEntries, long maxWeight) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * 查询前调用，写入时原样传给 {@link #put}
+     */
+    public long version(String namespace) {
+        return namespaceVersion(namespace).get();
+    }
+
+    public V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        if (!entry.isValid(now)) {
+            remove(key, entry);
+            return null;
+        }
+        entry.lastAccess = now;
+        return entry.value;
+    }
+
+    public void put(K key, V value, String namespace, long version, long ttlMillis, long weight) {
+        AtomicLong namespaceVersion = namespaceVersion(namespace);
+        if (namespaceVersion.get() != version) {
+            return;
+        }
+        long now = System.nanoTime();
+        Entry<V> entry = new Entry<>(value, namespaceVersion, version, now + TimeUnit.MILLISECONDS.toNanos(ttlMillis), weight, now);
+        Entry<V> previous = entries.put(key, entry);
+        this.weight.addAndGet(previous == null ? weight : weight - previous.weight);
+        if (overflow(1.0)) {
+            evict();
+        }
+    }
+
+    public void invalidate(String namespace) {
+        namespaceVersion(namespace).incrementAndGet();
+    }
+
+    public void clear() {
+        for (Map.Entry<K, Entry<V>> entry : entries.entrySet()) {
+            remove(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getWeight() {
+        return weight.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    private AtomicLong namespaceVersion(String namespace) {
+        AtomicLong version = versions.get(namespace);
+        if (version == null) {
+            version = versions.computeIfAbsent(namespace, k -> new AtomicLong());
+        }
+        return version;
+    }
+
+    private boolean overflow(double ratio) {
+        return entries.size() > maxEntries * ratio || (maxWeight > 0 && weight.get() > maxWeight * ratio);
+    }
+
+    private void remove(K key, Entry<V> entry) {
+        if (entries.remove(key, entry)) {
+            weight.addAndGet(-entry.weight);
+        }
+    }
+
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            List<Map.Entry<K, Entry<V>>> live = new ArrayList<>(entries.size());
+            for (Map.Entry<K, Entry<V>> entry : entries.entrySet()) {
+                if (entry.getValue().isValid(now)) {
+                    live.add(entry);
+                } else {
+                    remove(entry.getKey(), entry.getValue());
+                }
+            }
+            if (!overflow(1.0)) {
+                return;
+            }
+            // 一次淘汰到 90%，之后一段时间的写入不需要再清理
+            live.sort(Comparator.comparingLong(e -> e.getValue().lastAccess));
+            for (Map.Entry<K, Entry<V>> entry : live) {
+                if (!overflow(0.9)) {
+                    break;
+                }
+                remove(entry.getKey(), entry.getValue());
+                evictions.incrementAndGet();
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static final class Entry<V> {
+
+        private final V value;
+
+        private final AtomicLong namespaceVersion;
+
+        private final long version;
+
+        private final long expiresAt;
+
+        private final long weight;
+
+        private volatile long lastAccess;
+
+        Entry(V value, AtomicLong namespaceVersion, long version, long expiresAt, long weight, long lastAccess) {
+            this.value = value;
+            this.namespaceVersion = namespaceVersion;
+            this.version = version;
+            this.expiresAt = expiresAt;
+            this.weight = weight;
+            this.lastAccess = lastAccess;
+        }
+
+        boolean isValid(long now) {
+            return now - expiresAt < 0 && namespaceVersion.get() == version;
+        }
+    }
+}
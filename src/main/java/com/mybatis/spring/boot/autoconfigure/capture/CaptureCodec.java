@@ -0,0 +1,242 @@
+package com.mybatis.spring.boot.autoconfigure.capture;
+
+import com.mybatis.spring.boot.autoconfigure.stats.Varints;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.util.Date;
+
+/**
+ * 捕获文件的格式：
+ * <pre>
+ * 文件头   MSQLCAP 2(版本) 开始时间(long, epoch millis)
+ * 'S'     sqlId(varint) dataSource(string) statementId(string) sql(string)   sql 字典，出现在第一次使用之前
+ * 'T'     threadId(varint) name(string)                          线程字典
+ * 'E'     sqlId threadId 相对开始的微秒(varlong) 原耗时微秒(varlong) 参数个数(varint) 参数...
+ * </pre>
+ * 参数为 tag + 值，数值用 zigzag varint(见 {@link Varints})，字符串为 utf-8 长度 + 字节；
+ * 版本 2 增加了带 sqlType 的 null({@link SqlNull})，版本 1 的文件仍然可以读取
+ *
+ * @author spafka
+ */
+final class CaptureCodec {
+
+    static final byte[] MAGIC = "MSQLCAP".getBytes(StandardCharsets.US_ASCII);
+
+    static final int VERSION = 2;
+
+    static final int SQL = 'S';
+
+    static final int THREAD = 'T';
+
+    static final int EXECUTION = 'E';
+
+    private static final int NULL = 0;
+
+    private static final int LONG = 1;
+
+    private static final int DOUBLE = 2;
+
+    private static final int STRING = 3;
+
+    private static final int DECIMAL = 4;
+
+    private static final int TRUE = 5;
+
+    private static final int FALSE = 6;
+
+    /**
+     * epoch millis + 纳秒部分
+     */
+    private static final int TIMESTAMP = 7;
+
+    /**
+     * epoch day
+     */
+    private static final int DATE = 8;
+
+    private static final int BYTES = 9;
+
+    /**
+     * 当天的纳秒数
+     */
+    private static final int TIME = 10;
+
+    /**
+     * setNull 的 sqlType
+     */
+    private static final int SQL_NULL = 11;
+
+    /**
+     * {@link #snapshot} 不支持的类型(流、Blob、Array 等)，录制为 String.valueOf，回放时不能还原
+     */
+    static final Object UNSUPPORTED = new Object();
+
+    private CaptureCodec() {
+    }
+
+    /**
+     * 在业务线程中调用，复制可变的参数值(Date、byte[])，不支持的类型返回 {@link #UNSUPPORTED}
+     */
+    static Object snapshot(Object value) {
+        if (value == null || value instanceof String || value instanceof Long || value instanceof Integer
+                || value instanceof Short || value instanceof Byte || value instanceof Double || value instanceof Float
+                || value instanceof BigDecimal || value instanceof Boolean || value instanceof LocalDate
+                || value instanceof LocalDateTime || value instanceof LocalTime || value instanceof SqlNull) {
+            return value;
+        }
+        if (value instanceof java.sql.Date) {
+            return ((java.sql.Date) value).toLocalDate();
+        }
+        if (value instanceof java.sql.Time) {
+            return ((java.sql.Time) value).toLocalTime();
+        }
+        if (value instanceof Timestamp) {
+            return ((Timestamp) value).clone();
+        }
+        if (value instanceof Date) {
+            return new Timestamp(((Date) value).getTime());
+        }
+        if (value instanceof OffsetDateTime) {
+            return Timestamp.from(((OffsetDateTime) value).toInstant());
+        }
+        if (value instanceof ZonedDateTime) {
+            return Timestamp.from(((ZonedDateTime) value).toInstant());
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).clone();
+        }
+        if (value instanceof Character || value instanceof Enum) {
+            return value.toString();
+        }
+        return UNSUPPORTED;
+    }
+
+    static void writeValue(DataOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(LONG);
+            Varints.write(out, zigzag(((Number) value).longValue()));
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(DECIMAL);
+            writeString(out, ((BigDecimal) value).toString());
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Timestamp) {
+            Timestamp timestamp = (Timestamp) value;
+            out.writeByte(TIMESTAMP);
+            Varints.write(out, zigzag(timestamp.getTime()));
+            Varints.write(out, timestamp.getNanos() % 1000000);
+        } else if (value instanceof LocalDateTime) {
+            out.writeByte(TIMESTAMP);
+            Timestamp timestamp = Timestamp.valueOf((LocalDateTime) value);
+            Varints.write(out, zigzag(timestamp.getTime()));
+            Varints.write(out, timestamp.getNanos() % 1000000);
+        } else if (value instanceof LocalDate) {
+            out.writeByte(DATE);
+            Varints.write(out, zigzag(((LocalDate) value).toEpochDay()));
+        } else if (value instanceof LocalTime) {
+            out.writeByte(TIME);
+            Varints.write(out, ((LocalTime) value).toNanoOfDay());
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            out.writeByte(BYTES);
+            Varints.write(out, bytes.length);
+            out.write(bytes);
+        } else if (value instanceof SqlNull) {
+            out.writeByte(SQL_NULL);
+            Varints.write(out, zigzag(((SqlNull) value).getSqlType()));
+        } else {
+            out.writeByte(STRING);
+            writeString(out, value.toString());
+        }
+    }
+
+    static Object readValue(DataInput in) throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case LONG:
+                return unzigzag(Varints.read(in));
+            case DOUBLE:
+                return in.readDouble();
+            case STRING:
+                return readString(in);
+            case DECIMAL:
+                return new BigDecimal(readString(in));
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case TIMESTAMP:
+                Timestamp timestamp = new Timestamp(unzigzag(Varints.read(in)));
+                timestamp.setNanos(timestamp.getNanos() + (int) Varints.read(in));
+                return timestamp;
+            case DATE:
+                return LocalDate.ofEpochDay(unzigzag(Varints.read(in)));
+            case TIME:
+                return LocalTime.ofNanoOfDay(Varints.read(in));
+            case BYTES:
+                byte[] bytes = new byte[(int) Varints.read(in)];
+                in.readFully(bytes);
+                return bytes;
+            case SQL_NULL:
+                return SqlNull.of((int) unzigzag(Varints.read(in)));
+            default:
+                throw new IOException("unknown parameter tag " + tag);
+        }
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        Varints.write(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[(int) Varints.read(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void readMagic(DataInput in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        try {
+            in.readFully(magic);
+        } catch (EOFException e) {
+            throw new IOException("not a sql capture file");
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (magic[i] != MAGIC[i]) {
+                throw new IOException("not a sql capture file");
+            }
+        }
+        int version = in.readUnsignedByte();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("unsupported sql capture version " + version);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.mybatis.spring.boot.autoconfigure.capture;
+
+import com.mybatis.spring.boot.autoconfigure.stats.Varints;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 顺序读取 {@link SqlCapture} 录制的文件，文件末尾不完整的记录(进程退出时没有写完)会被忽略
+ *
+ * @author spafka
+ */
+public class CaptureReader implements Closeable {
+
+    private final DataInputStream in;
+
+    private final long startMillis;
+
+    private final List<String[]> sqls = new ArrayList<>();
+
+    private final List<String> threads = new ArrayList<>();
+
+    public CaptureReader(Path file) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024));
+        try {
+            CaptureCodec.readMagic(in);
+            this.startMillis = in.readLong();
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 录制开始的时间(epoch millis)
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * @return 下一次执行，读完时返回 null
+     */
+    public CapturedStatement next() throws IOException {
+        try {
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    return null;
+                }
+                if (type == CaptureCodec.SQL) {
+                    int id = (int) Varints.read(in);
+                    define(sqls, id, new String[]{CaptureCodec.readString(in), CaptureCodec.readString(in), CaptureCodec.readString(in)});
+                } else if (type == CaptureCodec.THREAD) {
+                    int id = (int) Varints.read(in);
+                    define(threads, id, CaptureCodec.readString(in));
+                } else if (type == CaptureCodec.EXECUTION) {
+                    String[] sql = sqls.get((int) Varints.read(in));
+                    int thread = (int) Varints.read(in);
+                    long offsetMicros = Varints.read(in);
+                    long elapsedMicros = Varints.read(in);
+                    Object[] parameters = new Object[(int) Varints.read(in)];
+                    for (int i = 0; i < parameters.length; i++) {
+                        parameters[i] = CaptureCodec.readValue(in);
+                    }
+                    return new CapturedStatement(sql[0], sql[1], sql[2], thread, threads.get(thread), offsetMicros, elapsedMicros, parameters);
+                } else {
+                    throw new IOException("unknown record type " + type);
+                }
+            }
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static <T> void define(List<T> dictionary, int id, T value) throws IOException {
+        if (id != dictionary.size()) {
+            throw new IOException("unexpected dictionary id " + id);
+        }
+        dictionary.add(value);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,49 @@
+package com.mybatis.spring.boot.autoconfigure.capture;
+
+import lombok.Getter;
+
+/**
+ * 录制的一次 sql 执行
+ *
+ * @author spafka
+ */
+@Getter
+public class CapturedStatement {
+
+    private final String dataSource;
+
+    private final String statementId;
+
+    private final String sql;
+
+    /**
+     * 线程在录制文件中的编号，从 0 开始
+     */
+    private final int threadId;
+
+    private final String thread;
+
+    /**
+     * 相对录制开始的时间
+     */
+    private final long offsetMicros;
+
+    /**
+     * 录制时的执行耗时
+     */
+    private final long elapsedMicros;
+
+    private final Object[] parameters;
+
+    CapturedStatement(String dataSource, String statementId, String sql, int threadId, String thread,
+                      long offsetMicros, long elapsedMicros, Object[] parameters) {
+        this.dataSource = dataSource;
+        this.statementId = statementId;
+        this.sql = sql;
+        this.threadId = threadId;
+        this.thread = thread;
+        this.offsetMicros = offsetMicros;
+        this.elapsedMicros = elapsedMicros;
+        this.parameters = parameters;
+    }
+}
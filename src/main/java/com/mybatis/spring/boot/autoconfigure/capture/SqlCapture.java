@@ -0,0 +1,352 @@
+package com.mybatis.spring.boot.autoconfigure.capture;
+
+import com.mybatis.spring.boot.autoconfigure.stats.Varints;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 录制 sql 的执行：statement id、sql、参数值、相对开始的时间和线程写入一个紧凑的二进制文件(格式见 {@link CaptureCodec})，
+ * 之后用 {@link SqlReplayer} 回放。
+ * <ul>
+ * <li>业务线程只复制参数值放入有界队列，队列满时丢弃并计数</li>
+ * <li>后台线程给 sql 和线程名分配编号，同一条 sql 只写一次，每次执行只写编号、时间和参数</li>
+ * <li>文件超过 maxBytes 后停止录制</li>
+ * <li>参数为流、Blob、Array 等不支持的类型时录制为 String.valueOf，回放结果不可信，按 statement 计数(unsupportedStatements)</li>
+ * </ul>
+ * 文件名中会加上开始时间，eg: logs/mybatis-capture.bin -> logs/mybatis-capture.20261019101500.bin
+ *
+ * @author spafka
+ */
+@Slf4j
+public class SqlCapture implements Closeable {
+
+    private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+    private static final int MAX_BATCH = 256;
+
+    private static final long POLL_MILLIS = 200;
+
+    private final Path file;
+
+    private final long maxBytes;
+
+    private final BlockingQueue<Execution> queue;
+
+    private final Thread writer;
+
+    private final long startMillis = System.currentTimeMillis();
+
+    private final long startNanos = System.nanoTime();
+
+    private final LongAdder captured = new LongAdder();
+
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * statement id -> 含有不支持类型参数的执行次数
+     */
+    private final ConcurrentMap<String, LongAdder> unsupportedStatements = new ConcurrentHashMap<>();
+
+    private volatile boolean running = true;
+
+    /**
+     * 文件写满或者写入失败后不再录制
+     */
+    private volatile boolean capturing = true;
+
+    private volatile long bytes;
+
+    /**
+     * 以下只在 writer 线程中访问，counter 在缓冲之前，计数包括还没有 flush 的字节
+     */
+    private CountingOutputStream counter;
+
+    private DataOutputStream out;
+
+    private final Map<SqlKey, Integer> sqlIds = new HashMap<>();
+
+    private final Map<String, Integer> threadIds = new HashMap<>();
+
+    /**
+     * @param file      文件名，实际文件名中会加上开始时间
+     * @param maxBytes  文件大小上限，0 表示不限制
+     * @param queueSize 等待写入的执行记录上限
+     */
+    public SqlCapture(Path file, long maxBytes, int queueSize) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String timestamp = TIMESTAMP_FORMATTER.format(Instant.ofEpochMilli(startMillis).atZone(ZoneId.systemDefault()));
+        this.file = file.toAbsolutePath().resolveSibling(dot > 0
+                ? name.substring(0, dot) + "." + timestamp + name.substring(dot)
+                : name + "." + timestamp);
+        this.maxBytes = maxBytes;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.writer = new Thread(this::run, "mybatis-sql-capture");
+        this.writer.setDaemon(true);
+    }
+
+    public void start() throws IOException {
+        Path parent = file.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        counter = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE_NEW), 64 * 1024));
+        out = new DataOutputStream(counter);
+        out.write(CaptureCodec.MAGIC);
+        out.writeByte(CaptureCodec.VERSION);
+        out.writeLong(startMillis);
+        writer.start();
+        log.info("capturing sql to {}", file);
+    }
+
+    public boolean isCapturing() {
+        return running && capturing;
+    }
+
+    /**
+     * 在执行 sql 的线程中调用，参数值会被复制(可变的 Date、byte[])，不支持的类型转为字符串并计数
+     *
+     * @param parameters  '?' 对应的参数值，会被原地替换为副本
+     * @param startNanos  开始执行时的 {@link System#nanoTime()}
+     */
+    public void record(String dataSource, String statementId, String sql, Object[] parameters, long startNanos, long elapsedNanos) {
+        if (!isCapturing()) {
+            return;
+        }
+        boolean unsupported = false;
+        for (int i = 0; i < parameters.length; i++) {
+            Object value = CaptureCodec.snapshot(parameters[i]);
+            if (value == CaptureCodec.UNSUPPORTED) {
+                unsupported = true;
+                value = String.valueOf(parameters[i]);
+            }
+            parameters[i] = value;
+        }
+        if (unsupported) {
+            unsupportedStatements.computeIfAbsent(statementId, id -> {
+                log.warn("statement {} has parameters that can not be captured, they are recorded as strings", id);
+                return new LongAdder();
+            }).increment();
+        }
+        Execution execution = new Execution(dataSource, statementId, sql, Thread.currentThread().getName(), parameters,
+                TimeUnit.NANOSECONDS.toMicros(startNanos - this.startNanos), TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+        if (!queue.offer(execution)) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * 写完队列中剩余的记录后关闭文件
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<Execution> batch = new ArrayList<>();
+        try {
+            while (running || !queue.isEmpty()) {
+                Execution first;
+                try {
+                    first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                if (capturing) {
+                    write(batch);
+                } else {
+                    dropped.add(batch.size());
+                }
+                batch.clear();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("write sql capture {} failed, capture stopped", file, e);
+            capturing = false;
+        } finally {
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.warn("close sql capture {} failed", file, e);
+            }
+            bytes = counter.count;
+        }
+    }
+
+    private void write(List<Execution> batch) throws IOException {
+        for (int i = 0; i < batch.size(); i++) {
+            if (maxBytes > 0 && counter.count >= maxBytes) {
+                capturing = false;
+                dropped.add(batch.size() - i);
+                log.info("sql capture {} reached {} bytes, capture stopped", file, maxBytes);
+                break;
+            }
+            Execution execution = batch.get(i);
+            int sqlId = sqlId(execution);
+            int threadId = threadId(execution.thread);
+            out.writeByte(CaptureCodec.EXECUTION);
+            Varints.write(out, sqlId);
+            Varints.write(out, threadId);
+            Varints.write(out, Math.max(0, execution.offsetMicros));
+            Varints.write(out, execution.elapsedMicros);
+            Varints.write(out, execution.parameters.length);
+            for (Object parameter : execution.parameters) {
+                CaptureCodec.writeValue(out, parameter);
+            }
+            captured.increment();
+        }
+        out.flush();
+        bytes = counter.count;
+    }
+
+    private int sqlId(Execution execution) throws IOException {
+        SqlKey key = new SqlKey(execution.dataSource, execution.statementId, execution.sql);
+        Integer id = sqlIds.get(key);
+        if (id == null) {
+            id = sqlIds.size();
+            sqlIds.put(key, id);
+            out.writeByte(CaptureCodec.SQL);
+            Varints.write(out, id);
+            CaptureCodec.writeString(out, execution.dataSource);
+            CaptureCodec.writeString(out, execution.statementId);
+            CaptureCodec.writeString(out, execution.sql);
+        }
+        return id;
+    }
+
+    private int threadId(String thread) throws IOException {
+        Integer id = threadIds.get(thread);
+        if (id == null) {
+            id = threadIds.size();
+            threadIds.put(thread, id);
+            out.writeByte(CaptureCodec.THREAD);
+            Varints.write(out, id);
+            CaptureCodec.writeString(out, thread);
+        }
+        return id;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("file", file.toString());
+        map.put("capturing", isCapturing());
+        map.put("queued", queue.size());
+        map.put("captured", captured.sum());
+        map.put("dropped", dropped.sum());
+        map.put("bytes", bytes);
+        Map<String, Long> unsupported = new LinkedHashMap<>();
+        unsupportedStatements.forEach((statementId, count) -> unsupported.put(statementId, count.sum()));
+        map.put("unsupportedStatements", unsupported);
+        return map;
+    }
+
+    private static final class Execution {
+
+        private final String dataSource;
+
+        private final String statementId;
+
+        private final String sql;
+
+        private final String thread;
+
+        private final Object[] parameters;
+
+        private final long offsetMicros;
+
+        private final long elapsedMicros;
+
+        Execution(String dataSource, String statementId, String sql, String thread, Object[] parameters, long offsetMicros, long elapsedMicros) {
+            this.dataSource = dataSource;
+            this.statementId = statementId;
+            this.sql = sql;
+            this.thread = thread;
+            this.parameters = parameters;
+            this.offsetMicros = offsetMicros;
+            this.elapsedMicros = elapsedMicros;
+        }
+    }
+
+    private static final class SqlKey {
+
+        private final String dataSource;
+
+        private final String statementId;
+
+        private final String sql;
+
+        SqlKey(String dataSource, String statementId, String sql) {
+            this.dataSource = dataSource;
+            this.statementId = statementId;
+            this.sql = sql;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof SqlKey)) {
+                return false;
+            }
+            SqlKey other = (SqlKey) o;
+            return sql.equals(other.sql) && statementId.equals(other.statementId) && dataSource.equals(other.dataSource);
+        }
+
+        @Override
+        public int hashCode() {
+            return (dataSource.hashCode() * 31 + statementId.hashCode()) * 31 + sql.hashCode();
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
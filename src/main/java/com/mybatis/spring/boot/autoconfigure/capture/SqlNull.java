@@ -0,0 +1,42 @@
+package com.mybatis.spring.boot.autoconfigure.capture;
+
+/**
+ * 录制的 setNull(index, sqlType)，回放时用同样的 sqlType 绑定；
+ * 有的驱动不接受 {@link java.sql.Types#NULL}，不能统一按 NULL 回放
+ *
+ * @author spafka
+ */
+public final class SqlNull {
+
+    private final int sqlType;
+
+    private SqlNull(int sqlType) {
+        this.sqlType = sqlType;
+    }
+
+    /**
+     * @param sqlType {@link java.sql.Types} 中的值或者驱动自定义的类型
+     */
+    public static SqlNull of(int sqlType) {
+        return new SqlNull(sqlType);
+    }
+
+    public int getSqlType() {
+        return sqlType;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof SqlNull && ((SqlNull) o).sqlType == sqlType;
+    }
+
+    @Override
+    public int hashCode() {
+        return sqlType;
+    }
+
+    @Override
+    public String toString() {
+        return "null";
+    }
+}
@@ -0,0 +1,408 @@
+package com.mybatis.spring.boot.autoconfigure.capture;
+
+import com.mybatis.spring.boot.autoconfigure.cache.LruMap;
+import com.mybatis.spring.boot.autoconfigure.stats.LatencyHistogram;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 回放 {@link SqlCapture} 录制的文件：
+ * <ul>
+ * <li>concurrency 个工作线程，每个线程一个连接(自动提交)，同一个录制线程的 sql 总是由同一个工作线程按原顺序执行</li>
+ * <li>speed 为回放速度，1 表示按录制时的时间间隔，2 表示两倍速，0 表示不等待、尽快执行</li>
+ * <li>查询的结果集会全部读取，输出每个 statement 回放耗时的 p50 / p95 / p99 以及录制时的耗时用来对比</li>
+ * </ul>
+ * 录制时的事务边界不会还原，insert / update / delete 同样会执行，只应该对测试库回放。
+ * <pre>
+ * java -cp mybatis-sql-log.jar:mybatis.jar:jdbc-driver.jar com.mybatis.spring.boot.autoconfigure.capture.SqlReplayer \
+ *     logs/mybatis-capture.20261019101500.bin jdbc:mysql://127.0.0.1:3306/test root password --speed=2 --concurrency=16
+ * </pre>
+ *
+ * @author spafka
+ */
+@Slf4j
+public class SqlReplayer {
+
+    private static final int QUEUE_SIZE = 1024;
+
+    /**
+     * 每个连接缓存的 PreparedStatement 个数
+     */
+    private static final int MAX_STATEMENTS = 256;
+
+    /**
+     * 最多打印的失败 sql 条数
+     */
+    private static final int MAX_ERROR_LOGS = 10;
+
+    private static final CapturedStatement END = new CapturedStatement("", "", "", 0, "", 0, 0, new Object[0]);
+
+    private final DataSource dataSource;
+
+    private final double speed;
+
+    private final int concurrency;
+
+    /**
+     * 只回放该数据源的 sql，为空时回放全部
+     */
+    private final String dataSourceName;
+
+    public SqlReplayer(DataSource dataSource, double speed, int concurrency) {
+        this(dataSource, speed, concurrency, null);
+    }
+
+    public SqlReplayer(DataSource dataSource, double speed, int concurrency, String dataSourceName) {
+        if (speed < 0 || concurrency <= 0) {
+            throw new IllegalArgumentException("speed must not be negative and concurrency must be positive");
+        }
+        this.dataSource = dataSource;
+        this.speed = speed;
+        this.concurrency = concurrency;
+        this.dataSourceName = dataSourceName;
+    }
+
+    public Report replay(Path file) throws IOException, InterruptedException {
+        Report report = new Report(speed, concurrency);
+        List<Worker> workers = new ArrayList<>(concurrency);
+        List<Thread> threads = new ArrayList<>(concurrency);
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < concurrency; i++) {
+            Worker worker = new Worker(report, startNanos);
+            Thread thread = new Thread(worker, "mybatis-sql-replay-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            workers.add(worker);
+            threads.add(thread);
+        }
+        try (CaptureReader reader = new CaptureReader(file)) {
+            CapturedStatement statement;
+            while ((statement = reader.next()) != null) {
+                if (dataSourceName == null || dataSourceName.equals(statement.getDataSource())) {
+                    report.spanMicros = Math.max(report.spanMicros, statement.getOffsetMicros());
+                    // 队列满时在这里等待，回放会落后于计划时间，体现在 lag 中
+                    workers.get(statement.getThreadId() % concurrency).queue.put(statement);
+                }
+            }
+        } finally {
+            for (Worker worker : workers) {
+                worker.queue.put(END);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+        report.elapsedNanos = System.nanoTime() - startNanos;
+        return report;
+    }
+
+    private final class Worker implements Runnable {
+
+        private final BlockingQueue<CapturedStatement> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+
+        private final Report report;
+
+        private final long startNanos;
+
+        private final Map<String, PreparedStatement> statements = new StatementCache(MAX_STATEMENTS);
+
+        private Connection connection;
+
+        Worker(Report report, long startNanos) {
+            this.report = report;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public void run() {
+            try {
+                CapturedStatement statement;
+                while ((statement = queue.take()) != END) {
+                    waitUntilScheduled(statement);
+                    execute(statement);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                closeConnection();
+            }
+        }
+
+        private void waitUntilScheduled(CapturedStatement statement) throws InterruptedException {
+            if (speed == 0) {
+                return;
+            }
+            long scheduled = startNanos + (long) (TimeUnit.MICROSECONDS.toNanos(statement.getOffsetMicros()) / speed);
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            report.lag.record(System.nanoTime() - scheduled);
+        }
+
+        private void execute(CapturedStatement statement) {
+            StatementResult result = report.result(statement.getStatementId());
+            result.captured.record(TimeUnit.MICROSECONDS.toNanos(statement.getElapsedMicros()));
+            long start = System.nanoTime();
+            try {
+                PreparedStatement ps = prepare(statement.getSql());
+                bind(ps, statement.getParameters());
+                if (ps.execute()) {
+                    try (ResultSet rs = ps.getResultSet()) {
+                        while (rs.next()) {
+                            result.rows.increment();
+                        }
+                    }
+                }
+                long nanos = System.nanoTime() - start;
+                result.replayed.record(nanos);
+                report.overall.record(nanos);
+            } catch (SQLException | RuntimeException e) {
+                result.errors.increment();
+                if (report.errors.incrementAndGet() <= MAX_ERROR_LOGS) {
+                    log.warn("replay {} failed: {}", statement.getStatementId(), e.getMessage());
+                }
+                // 连接可能已经不可用，下一条 sql 重新获取
+                closeConnection();
+            }
+        }
+
+        private PreparedStatement prepare(String sql) throws SQLException {
+            if (connection == null) {
+                connection = dataSource.getConnection();
+                connection.setAutoCommit(true);
+            }
+            PreparedStatement ps = statements.get(sql);
+            if (ps == null) {
+                ps = connection.prepareStatement(sql);
+                statements.put(sql, ps);
+            }
+            return ps;
+        }
+
+        private void closeConnection() {
+            statements.values().forEach(SqlReplayer::closeQuietly);
+            statements.clear();
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    log.debug("close connection failed", e);
+                }
+                connection = null;
+            }
+        }
+    }
+
+    private static void bind(PreparedStatement ps, Object[] parameters) throws SQLException {
+        for (int i = 0; i < parameters.length; i++) {
+            Object value = parameters[i];
+            if (value instanceof SqlNull) {
+                ps.setNull(i + 1, ((SqlNull) value).getSqlType());
+            } else if (value == null) {
+                // 版本 1 的文件没有记录 sqlType，和 mybatis 默认的 jdbcTypeForNull 一样按 OTHER 绑定
+                ps.setNull(i + 1, Types.OTHER);
+            } else if (value instanceof LocalDate) {
+                ps.setDate(i + 1, java.sql.Date.valueOf((LocalDate) value));
+            } else if (value instanceof LocalTime) {
+                ps.setTime(i + 1, Time.valueOf((LocalTime) value));
+            } else {
+                ps.setObject(i + 1, value);
+            }
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (SQLException e) {
+            log.debug("close statement failed", e);
+        }
+    }
+
+    /**
+     * 一个连接上按 sql 缓存的 PreparedStatement，淘汰时关闭
+     */
+    private static final class StatementCache extends LruMap<String, PreparedStatement> {
+
+        private static final long serialVersionUID = 1L;
+
+        StatementCache(int maxSize) {
+            super(maxSize);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+            if (super.removeEldestEntry(eldest)) {
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 回放结果
+     */
+    public static class Report {
+
+        private final double speed;
+
+        private final int concurrency;
+
+        private final LatencyHistogram overall = new LatencyHistogram();
+
+        /**
+         * 实际开始执行的时间比计划晚多少
+         */
+        private final LatencyHistogram lag = new LatencyHistogram();
+
+        private final AtomicLong errors = new AtomicLong();
+
+        private final ConcurrentMap<String, StatementResult> statements = new ConcurrentHashMap<>();
+
+        private long spanMicros;
+
+        private long elapsedNanos;
+
+        Report(double speed, int concurrency) {
+            this.speed = speed;
+            this.concurrency = concurrency;
+        }
+
+        private StatementResult result(String statementId) {
+            return statements.computeIfAbsent(statementId, id -> new StatementResult());
+        }
+
+        public long getErrors() {
+            return errors.get();
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("speed", speed);
+            map.put("concurrency", concurrency);
+            map.put("capturedSpanMs", TimeUnit.MICROSECONDS.toMillis(spanMicros));
+            map.put("elapsedMs", TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+            map.put("errors", errors.get());
+            map.put("latency", overall.toMap());
+            map.put("lag", lag.toMap());
+            Map<String, Object> byStatement = new LinkedHashMap<>();
+            sorted().forEach(entry -> byStatement.put(entry.getKey(), entry.getValue().toMap()));
+            map.put("statements", byStatement);
+            return map;
+        }
+
+        /**
+         * 按回放次数从多到少
+         */
+        private List<Map.Entry<String, StatementResult>> sorted() {
+            List<Map.Entry<String, StatementResult>> entries = new ArrayList<>(statements.entrySet());
+            entries.sort((a, b) -> Long.compare(b.getValue().replayed.getCount() + b.getValue().errors.sum(),
+                    a.getValue().replayed.getCount() + a.getValue().errors.sum()));
+            return entries;
+        }
+
+        public void print(PrintStream out) {
+            out.printf("replayed in %d ms (captured span %d ms, speed %s, concurrency %d), errors %d, lag p99 %.2f ms%n",
+                    TimeUnit.NANOSECONDS.toMillis(elapsedNanos), TimeUnit.MICROSECONDS.toMillis(spanMicros),
+                    speed == 0 ? "max" : speed + "x", concurrency, errors.get(), lag.quantileNanos(0.99) / 1e6);
+            String format = "%-60s %8s %6s %10s %10s %10s %10s %14s%n";
+            out.printf(format, "statement", "count", "errors", "p50 ms", "p95 ms", "p99 ms", "p999 ms", "captured p99");
+            row(out, format, "(all)", overall, errors.get(), null);
+            for (Map.Entry<String, StatementResult> entry : sorted()) {
+                StatementResult result = entry.getValue();
+                row(out, format, entry.getKey(), result.replayed, result.errors.sum(), result.captured);
+            }
+        }
+
+        private static void row(PrintStream out, String format, String name, LatencyHistogram latency, long errors, LatencyHistogram captured) {
+            out.printf(format, name, latency.getCount(), errors, millis(latency, 0.5), millis(latency, 0.95),
+                    millis(latency, 0.99), millis(latency, 0.999), captured == null ? "" : millis(captured, 0.99));
+        }
+
+        private static String millis(LatencyHistogram histogram, double quantile) {
+            return String.format("%.2f", histogram.quantileNanos(quantile) / 1e6);
+        }
+    }
+
+    private static final class StatementResult {
+
+        private final LatencyHistogram replayed = new LatencyHistogram();
+
+        /**
+         * 录制时的耗时
+         */
+        private final LatencyHistogram captured = new LatencyHistogram();
+
+        private final LongAdder errors = new LongAdder();
+
+        private final LongAdder rows = new LongAdder();
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("errors", errors.sum());
+            map.put("rows", rows.sum());
+            map.put("latency", replayed.toMap());
+            map.put("captured", captured.toMap());
+            return map;
+        }
+    }
+
+    /**
+     * SqlReplayer &lt;file&gt; &lt;jdbcUrl&gt; [user] [password] [--speed=1] [--concurrency=8] [--data-source=name]
+     */
+    public static void main(String[] args) throws Exception {
+        List<String> positional = new ArrayList<>();
+        double speed = 1;
+        int concurrency = 8;
+        String dataSourceName = null;
+        for (String arg : args) {
+            if (arg.startsWith("--speed=")) {
+                speed = Double.parseDouble(arg.substring("--speed=".length()));
+            } else if (arg.startsWith("--concurrency=")) {
+                concurrency = Integer.parseInt(arg.substring("--concurrency=".length()));
+            } else if (arg.startsWith("--data-source=")) {
+                dataSourceName = arg.substring("--data-source=".length());
+            } else {
+                positional.add(arg);
+            }
+        }
+        if (positional.size() < 2) {
+            System.err.println("usage: SqlReplayer <file> <jdbcUrl> [user] [password] [--speed=1] [--concurrency=8] [--data-source=name]");
+            System.err.println("       --speed=0 replays as fast as possible");
+            System.exit(2);
+        }
+        String url = positional.get(1);
+        UnpooledDataSource dataSource = new UnpooledDataSource(DriverManager.getDriver(url).getClass().getName(), url,
+                positional.size() > 2 ? positional.get(2) : null, positional.size() > 3 ? positional.get(3) : null);
+        Report report = new SqlReplayer(dataSource, speed, concurrency, dataSourceName).replay(Paths.get(positional.get(0)));
+        report.print(System.out);
+    }
+}
@@ -0,0 +1,519 @@
+package com.mybatis.spring.boot.autoconfigure.sink;
+
+import com.mybatis.spring.boot.autoconfigure.sql.ChunkedWriter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * sql 单独写入文件，不经过应用的日志框架，避免和业务日志争用同一个 appender 的锁：
+ * <ul>
+ * <li>业务线程只把渲染好的 sql 放入有界队列，队列满时丢弃并计数，不会阻塞</li>
+ * <li>队列同时按字符数限制(maxQueuedChars)，单条 sql 渲染时超过 maxSqlChars 的部分直接丢弃，
+ * 很大的批量语句不会生成完整的字符串，也不会在队列中堆积</li>
+ * <li>后台线程一次取出队列中所有的 sql，编码到 direct ByteBuffer，通过 FileChannel 批量写入(group commit)</li>
+ * <li>文件超过 maxFileBytes 或者进入新的周期(rotatePattern，eg: yyyy-MM-dd 每天)时滚动为
+ * name.周期.序号.log，可选在另一个后台线程中 gzip 压缩，只保留最近 maxHistory 个</li>
+ * </ul>
+ * 大小在批次之间检查，一个文件可能超出 maxFileBytes 一个批次(最多 256 条)的大小
+ *
+ * @author spafka
+ */
+@Slf4j
+public class SqlFileSink implements Closeable {
+
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    /**
+     * 一个批次最多写入的条数，文件大小在批次之间检查
+     */
+    private static final int MAX_BATCH = 256;
+
+    /**
+     * 队列为空时的等待时间，同时也是按时间滚动的检查间隔
+     */
+    private static final long POLL_MILLIS = 200;
+
+    private final Path file;
+
+    /**
+     * 滚动文件名前缀、后缀，eg: logs/mybatis-sql.log -> mybatis-sql.、.log
+     */
+    private final String baseName;
+
+    private final String extension;
+
+    private final long maxFileBytes;
+
+    /**
+     * 为空时不按时间滚动
+     */
+    private final DateTimeFormatter periodFormatter;
+
+    private final int maxHistory;
+
+    private final BlockingQueue<Entry> queue;
+
+    private final long maxQueuedChars;
+
+    private final int maxSqlChars;
+
+    /**
+     * 队列中 sql 和 header 的字符数，放入时增加，写入(或者写入失败)后减少
+     */
+    private final AtomicLong queuedChars = new AtomicLong();
+
+    private final ByteBuffer buffer;
+
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    private final Thread writer;
+
+    /**
+     * gzip 压缩和清理历史文件，不开启 gzip 时为空
+     */
+    private final ExecutorService compressor;
+
+    private final LongAdder written = new LongAdder();
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final LongAdder truncated = new LongAdder();
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    private final AtomicLong rotations = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    /**
+     * 以下只在 writer 线程中访问
+     */
+    private FileChannel channel;
+
+    private long fileBytes;
+
+    private String period;
+
+    /**
+     * 上一个滚动文件名中的周期和序号，同一周期内序号递增，不会重用已经被清理的序号
+     */
+    private String lastSuffix;
+
+    private int lastIndex;
+
+    /**
+     * @param maxFileBytes  单个文件的大小上限，0 表示不按大小滚动
+     * @param rotatePattern 周期格式，eg: yyyy-MM-dd，为空表示不按时间滚动
+     * @param gzip          滚动后是否压缩
+     * @param maxHistory    保留的滚动文件个数，0 表示不清理
+     * @param queueSize      等待写入的 sql 条数上限
+     * @param maxQueuedChars 等待写入的 sql 字符数上限
+     * @param maxSqlChars    单条 sql 的字符数上限，超出部分截断
+     * @param bufferBytes    direct buffer 大小，一个批次不超过该大小时只需要一次 write
+     */
+    public SqlFileSink(Path file, long maxFileBytes, String rotatePattern, boolean gzip, int maxHistory,
+                       int queueSize, long maxQueuedChars, int maxSqlChars, int bufferBytes) {
+        this.file = file.toAbsolutePath();
+        String name = this.file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        this.baseName = (dot > 0 ? name.substring(0, dot) : name) + ".";
+        this.extension = dot > 0 ? name.substring(dot) : "";
+        this.maxFileBytes = maxFileBytes;
+        this.periodFormatter = rotatePattern == null || rotatePattern.trim().isEmpty() ? null : DateTimeFormatter.ofPattern(rotatePattern.trim());
+        this.maxHistory = maxHistory;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.maxQueuedChars = maxQueuedChars;
+        this.maxSqlChars = maxSqlChars;
+        this.buffer = ByteBuffer.allocateDirect(bufferBytes);
+        this.compressor = gzip ? new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "mybatis-sql-file-gzip");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        this.writer = new Thread(this::run, "mybatis-sql-file");
+        this.writer.setDaemon(true);
+    }
+
+    public void start() throws IOException {
+        Path parent = file.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        writer.start();
+    }
+
+    /**
+     * 边渲染边写入长度受限的缓冲，超过 maxSqlChars 的部分丢弃，然后放入队列；队列已满时不渲染
+     *
+     * @param header 写在 sql 前一行，时间和线程名之后
+     */
+    public boolean offer(String header, SqlWriter sql) {
+        if (!running || queuedChars.get() >= maxQueuedChars) {
+            dropped.increment();
+            return false;
+        }
+        LimitedBuilder out = new LimitedBuilder(maxSqlChars);
+        try {
+            sql.writeTo(out);
+        } catch (IOException e) {
+            // LimitedBuilder 不会抛出 IOException
+            throw new UncheckedIOException(e);
+        }
+        if (out.truncated == 0) {
+            return offer(header, out.sb);
+        }
+        out.sb.append("\n/* ").append(out.truncated).append(" chars truncated */");
+        if (offer(header, out.sb)) {
+            truncated.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 放入队列，队列已满(条数或者字符数)或者已经关闭时丢弃
+     *
+     * @param header 写在 sql 前一行，时间和线程名之后
+     */
+    public boolean offer(String header, CharSequence sql) {
+        if (running) {
+            long chars = (long) header.length() + sql.length();
+            if (queuedChars.addAndGet(chars) <= maxQueuedChars
+                    && queue.offer(new Entry(System.currentTimeMillis(), Thread.currentThread().getName(), header, sql, chars))) {
+                return true;
+            }
+            queuedChars.addAndGet(-chars);
+        }
+        dropped.increment();
+        return false;
+    }
+
+    /**
+     * 写完队列中剩余的 sql 后关闭文件
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (compressor != null) {
+            compressor.shutdown();
+        }
+    }
+
+    private void run() {
+        List<Entry> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            Entry first;
+            try {
+                first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // 不响应中断：中断正在 write 的 FileChannel 会关闭它，关闭通过 running 控制
+                continue;
+            }
+            try {
+                rotateIfNecessary(System.currentTimeMillis());
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                    write(batch);
+                }
+            } catch (IOException | RuntimeException e) {
+                failures.increment();
+                log.warn("write sql file {} failed, {} sql dropped", file, batch.size(), e);
+                closeChannel();
+            } finally {
+                long chars = 0;
+                for (Entry entry : batch) {
+                    chars += entry.chars;
+                }
+                queuedChars.addAndGet(-chars);
+                batch.clear();
+            }
+        }
+        closeChannel();
+    }
+
+    private void write(List<Entry> batch) throws IOException {
+        if (channel == null) {
+            open(System.currentTimeMillis());
+        }
+        try (ChunkedWriter out = ChunkedWriter.of(buffer, StandardCharsets.UTF_8, this::drain, CHUNK_SIZE)) {
+            for (Entry entry : batch) {
+                TIME_FORMATTER.formatTo(Instant.ofEpochMilli(entry.timeMillis).atZone(zone), out);
+                out.append(" [").append(entry.thread).append("] ").append(entry.header).append('\n')
+                        .append(entry.sql).append("\n\n");
+            }
+        }
+        written.add(batch.size());
+    }
+
+    private void drain(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            int count = channel.write(buffer);
+            fileBytes += count;
+            bytes.addAndGet(count);
+        }
+    }
+
+    private void open(long now) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileBytes = channel.size();
+        // 沿用上次运行留下的文件时，按它的修改时间计算周期
+        long since = fileBytes > 0 ? Files.getLastModifiedTime(file).toMillis() : now;
+        period = period(since);
+    }
+
+    private void rotateIfNecessary(long now) throws IOException {
+        if (channel == null) {
+            if (!Files.exists(file)) {
+                return;
+            }
+            open(now);
+        }
+        String currentPeriod = period(now);
+        boolean periodChanged = period != null && !period.equals(currentPeriod);
+        if (!periodChanged && (maxFileBytes <= 0 || fileBytes < maxFileBytes)) {
+            return;
+        }
+        if (fileBytes == 0) {
+            period = currentPeriod;
+            return;
+        }
+        closeChannel();
+        Path rotated = rotatedFile(period == null ? TIMESTAMP_FORMATTER.format(Instant.ofEpochMilli(now).atZone(zone)) : period);
+        Files.move(file, rotated);
+        rotations.incrementAndGet();
+        if (compressor != null) {
+            compressor.execute(() -> {
+                gzip(rotated);
+                prune();
+            });
+        } else {
+            prune();
+        }
+    }
+
+    private String period(long millis) {
+        return periodFormatter == null ? null : periodFormatter.format(Instant.ofEpochMilli(millis).atZone(zone));
+    }
+
+    private Path rotatedFile(String suffix) {
+        int index = suffix.equals(lastSuffix) ? lastIndex + 1 : 0;
+        for (; ; index++) {
+            Path rotated = file.resolveSibling(baseName + suffix + "." + index + extension);
+            if (!Files.exists(rotated) && !Files.exists(rotated.resolveSibling(rotated.getFileName() + ".gz"))) {
+                lastSuffix = suffix;
+                lastIndex = index;
+                return rotated;
+            }
+        }
+    }
+
+    private static void gzip(Path source) {
+        if (!Files.exists(source)) {
+            // 排队压缩期间已经被 prune 删除
+            return;
+        }
+        Path target = source.resolveSibling(source.getFileName() + ".gz");
+        try (InputStream in = Files.newInputStream(source);
+             OutputStream out = new GZIPOutputStream(Files.newOutputStream(target), 64 * 1024)) {
+            byte[] bytes = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(bytes)) >= 0) {
+                out.write(bytes, 0, read);
+            }
+        } catch (IOException e) {
+            log.warn("gzip {} failed", source, e);
+            try {
+                Files.deleteIfExists(target);
+            } catch (IOException ignored) {
+                // 保留未压缩的文件
+            }
+            return;
+        }
+        try {
+            Files.delete(source);
+        } catch (IOException e) {
+            log.warn("delete {} failed", source, e);
+        }
+    }
+
+    /**
+     * 删除最旧的滚动文件，只保留 maxHistory 个
+     */
+    private void prune() {
+        if (maxHistory <= 0) {
+            return;
+        }
+        List<Path> rotated = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(file.getParent(), baseName + "*")) {
+            for (Path path : files) {
+                String name = path.getFileName().toString();
+                if (!path.equals(file) && (name.endsWith(extension) || name.endsWith(extension + ".gz"))) {
+                    rotated.add(path);
+                }
+            }
+            if (rotated.size() <= maxHistory) {
+                return;
+            }
+            rotated.sort(Comparator.comparingLong(SqlFileSink::lastModified));
+            for (Path path : rotated.subList(0, rotated.size() - maxHistory)) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            log.warn("prune sql files failed", e);
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private void closeChannel() {
+        buffer.clear();
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("close sql file {} failed", file, e);
+        }
+        channel = null;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("file", file.toString());
+        map.put("queued", queue.size());
+        map.put("queuedChars", queuedChars.get());
+        map.put("written", written.sum());
+        map.put("dropped", dropped.sum());
+        map.put("truncated", truncated.sum());
+        map.put("failures", failures.sum());
+        map.put("bytes", bytes.get());
+        map.put("rotations", rotations.get());
+        return map;
+    }
+
+    private static final class Entry {
+
+        private final long timeMillis;
+
+        private final String thread;
+
+        private final String header;
+
+        private final CharSequence sql;
+
+        private final long chars;
+
+        Entry(long timeMillis, String thread, String header, CharSequence sql, long chars) {
+            this.timeMillis = timeMillis;
+            this.thread = thread;
+            this.header = header;
+            this.sql = sql;
+            this.chars = chars;
+        }
+    }
+
+    /**
+     * 把 sql 写入 out，eg: SqlRenderer.render(out, pretty)
+     */
+    @FunctionalInterface
+    public interface SqlWriter {
+
+        void writeTo(Appendable out) throws IOException;
+    }
+
+    /**
+     * 超过 limit 之后只计数，不再追加
+     */
+    private static final class LimitedBuilder implements Appendable {
+
+        private final StringBuilder sb;
+
+        private final int limit;
+
+        private long truncated;
+
+        LimitedBuilder(int limit) {
+            this.sb = new StringBuilder(Math.min(limit, 1024));
+            this.limit = limit;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq) {
+            return csq == null ? append("null", 0, 4) : append(csq, 0, csq.length());
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) {
+            if (csq == null) {
+                return append("null", start, end);
+            }
+            int room = Math.max(0, limit - sb.length());
+            int length = end - start;
+            if (length <= room) {
+                sb.append(csq, start, end);
+            } else {
+                sb.append(csq, start, start + room);
+                truncated += length - room;
+            }
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) {
+            if (sb.length() < limit) {
+                sb.append(c);
+            } else {
+                truncated++;
+            }
+            return this;
+        }
+    }
+}
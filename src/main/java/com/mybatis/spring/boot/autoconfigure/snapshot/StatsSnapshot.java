@@ -0,0 +1,168 @@
+package com.mybatis.spring.boot.autoconfigure.snapshot;
+
+import com.mybatis.spring.boot.autoconfigure.stats.LatencyHistogram;
+import com.mybatis.spring.boot.autoconfigure.stats.SqlStatsRegistry;
+import com.mybatis.spring.boot.autoconfigure.stats.StatementStats;
+import com.mybatis.spring.boot.autoconfigure.stats.Varints;
+import lombok.Getter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 某一时刻所有 statement 的累计统计：次数、错误数、总耗时、最大耗时以及耗时分布的桶计数。
+ * <p>
+ * 文件格式：MSQLSNAP 1(版本) 生成时间 进程启动时间 实例名 statement 个数，每个 statement 依次为
+ * 数据源、id、sql 生成次数和总耗时、执行次数、错误数、总耗时、最大耗时、耗时分布({@link LatencyHistogram#writeCounts})，
+ * 数值都是 varint，只写非零的桶，一般一个 statement 几十个字节
+ *
+ * @author spafka
+ */
+@Getter
+public class StatsSnapshot {
+
+    private static final byte[] MAGIC = "MSQLSNAP".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int VERSION = 1;
+
+    private final long takenAt;
+
+    private final long startedAt;
+
+    /**
+     * pid@host
+     */
+    private final String instance;
+
+    private final List<Entry> entries;
+
+    public StatsSnapshot(long takenAt, long startedAt, String instance, List<Entry> entries) {
+        this.takenAt = takenAt;
+        this.startedAt = startedAt;
+        this.instance = instance;
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    public static StatsSnapshot of(SqlStatsRegistry registry) {
+        List<Entry> entries = new ArrayList<>();
+        for (StatementStats stats : registry.getStatements()) {
+            entries.add(new Entry(stats.getDataSource(), stats.getId(), stats.getBuild().getCount(), stats.getBuild().getTotalNanos(),
+                    stats.getExecute().getCount(), stats.getErrors().sum(), stats.getExecute().getTotalNanos(),
+                    stats.getExecute().getMaxNanos(), stats.latencyCounts()));
+        }
+        return new StatsSnapshot(System.currentTimeMillis(), ManagementFactory.getRuntimeMXBean().getStartTime(),
+                ManagementFactory.getRuntimeMXBean().getName(), entries);
+    }
+
+    /**
+     * 先写入临时文件再改名，读取的一方不会看到写了一半的文件
+     */
+    public void write(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024))) {
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(takenAt);
+            out.writeLong(startedAt);
+            out.writeUTF(instance);
+            Varints.write(out, entries.size());
+            for (Entry entry : entries) {
+                out.writeUTF(entry.dataSource);
+                out.writeUTF(entry.id);
+                Varints.write(out, entry.buildCount);
+                Varints.write(out, entry.buildNanos);
+                Varints.write(out, entry.count);
+                Varints.write(out, entry.errors);
+                Varints.write(out, entry.totalNanos);
+                Varints.write(out, entry.maxNanos);
+                LatencyHistogram.writeCounts(out, entry.buckets);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static StatsSnapshot read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (magic[i] != MAGIC[i]) {
+                    throw new IOException(file + " is not a sql stats snapshot");
+                }
+            }
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("unsupported sql stats snapshot version " + version);
+            }
+            long takenAt = in.readLong();
+            long startedAt = in.readLong();
+            String instance = in.readUTF();
+            int size = (int) Varints.read(in);
+            List<Entry> entries = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                entries.add(new Entry(in.readUTF(), in.readUTF(), Varints.read(in), Varints.read(in), Varints.read(in),
+                        Varints.read(in), Varints.read(in), Varints.read(in), LatencyHistogram.readCounts(in)));
+            }
+            return new StatsSnapshot(takenAt, startedAt, instance, entries);
+        }
+    }
+
+    /**
+     * 一个 statement 的累计统计
+     */
+    @Getter
+    public static class Entry {
+
+        private final String dataSource;
+
+        private final String id;
+
+        private final long buildCount;
+
+        private final long buildNanos;
+
+        private final long count;
+
+        private final long errors;
+
+        private final long totalNanos;
+
+        private final long maxNanos;
+
+        /**
+         * 执行耗时分布的桶计数，见 {@link LatencyHistogram#counts()}
+         */
+        private final long[] buckets;
+
+        public Entry(String dataSource, String id, long buildCount, long buildNanos, long count, long errors,
+                     long totalNanos, long maxNanos, long[] buckets) {
+            this.dataSource = dataSource;
+            this.id = id;
+            this.buildCount = buildCount;
+            this.buildNanos = buildNanos;
+            this.count = count;
+            this.errors = errors;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.buckets = buckets;
+        }
+
+        /**
+         * 数据源:statement id
+         */
+        public String key() {
+            return dataSource + ":" + id;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.mybatis.spring.boot.autoconfigure.snapshot;
+
+import com.mybatis.spring.boot.autoconfigure.stats.LatencyHistogram;
+import lombok.Getter;
+
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 比较两个快照(eg: 发布前后)中每个 statement 的耗时，按选定分位数的变化倍数排序，
+ * 分位数由快照中的桶计数计算，不是两个平均值相比
+ * <pre>
+ * java -cp mybatis-sql-log.jar:mybatis.jar com.mybatis.spring.boot.autoconfigure.snapshot.StatsSnapshotDiff \
+ *     logs/mybatis-stats/mybatis-stats.20240101120000.snap logs/mybatis-stats/mybatis-stats.20240102120000.snap --quantile=0.99
+ * </pre>
+ *
+ * @author spafka
+ */
+public class StatsSnapshotDiff {
+
+    private StatsSnapshotDiff() {
+    }
+
+    /**
+     * @param quantile 用来排序的分位数，0 ~ 1
+     * @param minCount 两边执行次数都不少于该值的 statement 才参与排序，其他的 ratio 为 NaN
+     * @return 按变化倍数从大到小(变慢最多的在前)
+     */
+    public static List<Change> compare(StatsSnapshot before, StatsSnapshot after, double quantile, long minCount) {
+        Map<String, StatsSnapshot.Entry> beforeEntries = index(before);
+        Map<String, StatsSnapshot.Entry> afterEntries = index(after);
+        List<Change> changes = new ArrayList<>();
+        afterEntries.forEach((key, entry) -> changes.add(new Change(key, beforeEntries.get(key), entry, quantile, minCount)));
+        beforeEntries.forEach((key, entry) -> {
+            if (!afterEntries.containsKey(key)) {
+                changes.add(new Change(key, entry, null, quantile, minCount));
+            }
+        });
+        changes.sort(Comparator.comparingDouble((Change c) -> Double.isNaN(c.ratio) ? Double.NEGATIVE_INFINITY : c.ratio).reversed());
+        return changes;
+    }
+
+    private static Map<String, StatsSnapshot.Entry> index(StatsSnapshot snapshot) {
+        Map<String, StatsSnapshot.Entry> map = new LinkedHashMap<>();
+        snapshot.getEntries().forEach(entry -> map.put(entry.key(), entry));
+        return map;
+    }
+
+    /**
+     * 一个 statement 前后的对比，不存在的一边次数为 0
+     */
+    @Getter
+    public static class Change {
+
+        private final String key;
+
+        private final long beforeCount;
+
+        private final long afterCount;
+
+        private final long beforeNanos;
+
+        private final long afterNanos;
+
+        private final double beforeErrorRate;
+
+        private final double afterErrorRate;
+
+        /**
+         * after / before，次数不足时为 NaN
+         */
+        private final double ratio;
+
+        Change(String key, StatsSnapshot.Entry before, StatsSnapshot.Entry after, double quantile, long minCount) {
+            this.key = key;
+            this.beforeCount = before == null ? 0 : before.getCount();
+            this.afterCount = after == null ? 0 : after.getCount();
+            this.beforeNanos = quantileNanos(before, quantile);
+            this.afterNanos = quantileNanos(after, quantile);
+            this.beforeErrorRate = errorRate(before);
+            this.afterErrorRate = errorRate(after);
+            this.ratio = beforeCount >= minCount && afterCount >= minCount && beforeCount > 0 && afterCount > 0
+                    ? (afterNanos + 1) / (double) (beforeNanos + 1) : Double.NaN;
+        }
+
+        private static long quantileNanos(StatsSnapshot.Entry entry, double quantile) {
+            if (entry == null) {
+                return 0;
+            }
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.add(entry.getBuckets());
+            return histogram.quantileNanos(quantile);
+        }
+
+        private static double errorRate(StatsSnapshot.Entry entry) {
+            return entry == null || entry.getCount() == 0 ? 0 : entry.getErrors() / (double) entry.getCount();
+        }
+    }
+
+    static void print(StatsSnapshot before, StatsSnapshot after, List<Change> changes, double quantile, int top, PrintStream out) {
+        out.printf("before %s %s%nafter  %s %s%n", before.getInstance(), Instant.ofEpochMilli(before.getTakenAt()),
+                after.getInstance(), Instant.ofEpochMilli(after.getTakenAt()));
+        String label = "p" + (quantile * 100 == Math.rint(quantile * 100) ? String.valueOf((int) (quantile * 100)) : String.valueOf(quantile * 100));
+        String format = "%-70s %10s %10s %12s %12s %8s %10s%n";
+        out.printf(format, "statement", "count", "count", label + " ms", label + " ms", "change", "errors");
+        int printed = 0;
+        for (Change change : changes) {
+            if (printed++ >= top) {
+                break;
+            }
+            out.printf(format, change.key, change.beforeCount, change.afterCount, millis(change.beforeNanos), millis(change.afterNanos),
+                    Double.isNaN(change.ratio) ? (change.beforeCount == 0 ? "new" : change.afterCount == 0 ? "gone" : "-")
+                            : String.format("%.2fx", change.ratio),
+                    String.format("%.2f%%", change.afterErrorRate * 100));
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2f", nanos / 1e6);
+    }
+
+    /**
+     * StatsSnapshotDiff &lt;before&gt; &lt;after&gt; [--quantile=0.99] [--min-count=10] [--top=30]
+     */
+    public static void main(String[] args) throws Exception {
+        List<String> files = new ArrayList<>();
+        double quantile = 0.99;
+        long minCount = 10;
+        int top = 30;
+        for (String arg : args) {
+            if (arg.startsWith("--quantile=")) {
+                quantile = Double.parseDouble(arg.substring("--quantile=".length()));
+            } else if (arg.startsWith("--min-count=")) {
+                minCount = Long.parseLong(arg.substring("--min-count=".length()));
+            } else if (arg.startsWith("--top=")) {
+                top = Integer.parseInt(arg.substring("--top=".length()));
+            } else {
+                files.add(arg);
+            }
+        }
+        if (files.size() != 2) {
+            System.err.println("usage: StatsSnapshotDiff <before> <after> [--quantile=0.99] [--min-count=10] [--top=30]");
+            System.exit(2);
+        }
+        StatsSnapshot before = StatsSnapshot.read(Paths.get(files.get(0)));
+        StatsSnapshot after = StatsSnapshot.read(Paths.get(files.get(1)));
+        print(before, after, compare(before, after, quantile, minCount), quantile, top, System.out);
+    }
+}
@@ -0,0 +1,179 @@
+package com.mybatis.spring.boot.autoconfigure.snapshot;
+
+import com.mybatis.spring.boot.autoconfigure.stats.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 合并多个实例的快照，得到整个集群每个 statement 的次数、错误数和耗时分位数。
+ * 分位数由所有实例相加后的桶计数计算，不是各实例分位数的平均值。
+ * <p>
+ * 快照是进程启动以来的累计值，同一个进程(实例名 + 启动时间)的多个快照只取最新的一个，
+ * 参数可以直接给每个实例的快照目录
+ * <pre>
+ * java -cp mybatis-sql-log.jar:mybatis.jar com.mybatis.spring.boot.autoconfigure.snapshot.StatsSnapshotMerge \
+ *     /data/app-*&#47;logs/mybatis-stats --top=50 --out=fleet.snap
+ * </pre>
+ * --out 写出的合并结果也是快照文件，可以继续用 {@link StatsSnapshotDiff} 比较发布前后的整个集群
+ *
+ * @author spafka
+ */
+public class StatsSnapshotMerge {
+
+    private StatsSnapshotMerge() {
+    }
+
+    /**
+     * 读取文件，目录则读取其中所有 mybatis-stats.*.snap
+     */
+    public static List<StatsSnapshot> read(Collection<Path> paths) throws IOException {
+        List<StatsSnapshot> snapshots = new ArrayList<>();
+        for (Path path : paths) {
+            if (Files.isDirectory(path)) {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, StatsSnapshotWriter.PREFIX + "*" + StatsSnapshotWriter.SUFFIX)) {
+                    for (Path file : stream) {
+                        snapshots.add(StatsSnapshot.read(file));
+                    }
+                }
+            } else {
+                snapshots.add(StatsSnapshot.read(path));
+            }
+        }
+        return snapshots;
+    }
+
+    /**
+     * 同一个进程只保留最新的快照，累计值重复相加会把次数算成几倍
+     */
+    public static List<StatsSnapshot> latestPerProcess(List<StatsSnapshot> snapshots) {
+        Map<String, StatsSnapshot> latest = new LinkedHashMap<>();
+        for (StatsSnapshot snapshot : snapshots) {
+            latest.merge(snapshot.getInstance() + "/" + snapshot.getStartedAt(), snapshot,
+                    (a, b) -> a.getTakenAt() >= b.getTakenAt() ? a : b);
+        }
+        return new ArrayList<>(latest.values());
+    }
+
+    /**
+     * 按 数据源:statement id 相加：次数、错误数、耗时和桶计数相加，最大耗时取最大值
+     */
+    public static StatsSnapshot merge(List<StatsSnapshot> snapshots) {
+        Map<String, Merged> merged = new LinkedHashMap<>();
+        long takenAt = 0;
+        long startedAt = Long.MAX_VALUE;
+        for (StatsSnapshot snapshot : snapshots) {
+            takenAt = Math.max(takenAt, snapshot.getTakenAt());
+            startedAt = Math.min(startedAt, snapshot.getStartedAt());
+            for (StatsSnapshot.Entry entry : snapshot.getEntries()) {
+                merged.computeIfAbsent(entry.key(), key -> new Merged(entry.getDataSource(), entry.getId())).add(entry);
+            }
+        }
+        List<StatsSnapshot.Entry> entries = new ArrayList<>(merged.size());
+        merged.values().forEach(m -> entries.add(m.toEntry()));
+        return new StatsSnapshot(takenAt, snapshots.isEmpty() ? 0 : startedAt, "merged(" + snapshots.size() + ")", entries);
+    }
+
+    private static final class Merged {
+
+        private final String dataSource;
+
+        private final String id;
+
+        private long buildCount;
+
+        private long buildNanos;
+
+        private long count;
+
+        private long errors;
+
+        private long totalNanos;
+
+        private long maxNanos;
+
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        Merged(String dataSource, String id) {
+            this.dataSource = dataSource;
+            this.id = id;
+        }
+
+        void add(StatsSnapshot.Entry entry) {
+            buildCount += entry.getBuildCount();
+            buildNanos += entry.getBuildNanos();
+            count += entry.getCount();
+            errors += entry.getErrors();
+            totalNanos += entry.getTotalNanos();
+            maxNanos = Math.max(maxNanos, entry.getMaxNanos());
+            latency.add(entry.getBuckets());
+        }
+
+        StatsSnapshot.Entry toEntry() {
+            return new StatsSnapshot.Entry(dataSource, id, buildCount, buildNanos, count, errors, totalNanos, maxNanos, latency.counts());
+        }
+    }
+
+    /**
+     * 按总耗时倒序，最先看到的就是整个集群占用数据库时间最多的语句
+     */
+    static void print(StatsSnapshot merged, int top, PrintStream out) {
+        List<StatsSnapshot.Entry> entries = new ArrayList<>(merged.getEntries());
+        entries.sort(Comparator.comparingLong(StatsSnapshot.Entry::getTotalNanos).reversed());
+        String format = "%-70s %12s %8s %10s %10s %10s %10s %10s %10s%n";
+        out.printf("%s, %d statements%n", merged.getInstance(), entries.size());
+        out.printf(format, "statement", "count", "errors", "avg ms", "p50 ms", "p95 ms", "p99 ms", "p999 ms", "max ms");
+        for (StatsSnapshot.Entry entry : entries.subList(0, Math.min(top, entries.size()))) {
+            LatencyHistogram latency = new LatencyHistogram();
+            latency.add(entry.getBuckets());
+            out.printf(format, entry.key(), entry.getCount(), entry.getErrors(),
+                    millis(entry.getCount() == 0 ? 0 : entry.getTotalNanos() / entry.getCount()),
+                    millis(latency.quantileNanos(0.5)), millis(latency.quantileNanos(0.95)), millis(latency.quantileNanos(0.99)),
+                    millis(latency.quantileNanos(0.999)), millis(entry.getMaxNanos()));
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2f", nanos / 1e6);
+    }
+
+    /**
+     * StatsSnapshotMerge &lt;file or dir&gt;... [--top=30] [--out=merged.snap]
+     */
+    public static void main(String[] args) throws Exception {
+        List<Path> paths = new ArrayList<>();
+        int top = 30;
+        Path output = null;
+        for (String arg : args) {
+            if (arg.startsWith("--top=")) {
+                top = Integer.parseInt(arg.substring("--top=".length()));
+            } else if (arg.startsWith("--out=")) {
+                output = Paths.get(arg.substring("--out=".length()));
+            } else {
+                paths.add(Paths.get(arg));
+            }
+        }
+        if (paths.isEmpty()) {
+            System.err.println("usage: StatsSnapshotMerge <file or dir>... [--top=30] [--out=merged.snap]");
+            System.exit(2);
+        }
+        List<StatsSnapshot> snapshots = read(paths);
+        List<StatsSnapshot> latest = latestPerProcess(snapshots);
+        System.out.printf("%d snapshots, %d processes%n", snapshots.size(), latest.size());
+        StatsSnapshot merged = merge(latest);
+        if (output != null) {
+            merged.write(output.toAbsolutePath());
+        }
+        print(merged, top, System.out);
+    }
+}
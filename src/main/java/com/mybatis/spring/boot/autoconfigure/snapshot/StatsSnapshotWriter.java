@@ -0,0 +1,134 @@
+package com.mybatis.spring.boot.autoconfigure.snapshot;
+
+import com.mybatis.spring.boot.autoconfigure.stats.SqlStatsRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 定时把 {@link SqlStatsRegistry} 写入 dir/mybatis-stats.yyyyMMddHHmmss.snap，只保留最近 maxFiles 个，
+ * 关闭时(应用停止)再写一次，重启后仍然可以用 {@link StatsSnapshotDiff} 比较前后两个版本
+ *
+ * @author spafka
+ */
+@Slf4j
+public class StatsSnapshotWriter implements Closeable {
+
+    static final String PREFIX = "mybatis-stats.";
+
+    static final String SUFFIX = ".snap";
+
+    private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+    private final SqlStatsRegistry registry;
+
+    private final Path dir;
+
+    private final long intervalSeconds;
+
+    private final int maxFiles;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong written = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private volatile Path lastFile;
+
+    /**
+     * @param maxFiles 保留的快照个数，0 表示不清理
+     */
+    public StatsSnapshotWriter(SqlStatsRegistry registry, Path dir, long intervalSeconds, int maxFiles) {
+        this.registry = registry;
+        this.dir = dir.toAbsolutePath();
+        this.intervalSeconds = intervalSeconds;
+        this.maxFiles = maxFiles;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "mybatis-stats-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() throws IOException {
+        Files.createDirectories(dir);
+        scheduler.scheduleAtFixedRate(this::write, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 写入一个快照，同一秒内重复写入时覆盖
+     */
+    public synchronized void write() {
+        long now = System.currentTimeMillis();
+        Path file = dir.resolve(PREFIX + TIMESTAMP_FORMATTER.format(Instant.ofEpochMilli(now).atZone(ZoneId.systemDefault())) + SUFFIX);
+        try {
+            StatsSnapshot.of(registry).write(file);
+            lastFile = file;
+            written.incrementAndGet();
+            prune();
+        } catch (IOException | RuntimeException e) {
+            failures.incrementAndGet();
+            log.warn("write sql stats snapshot {} failed", file, e);
+        }
+    }
+
+    /**
+     * 文件名中的时间按字典序即为时间顺序，删除最旧的
+     */
+    private void prune() throws IOException {
+        if (maxFiles <= 0) {
+            return;
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        if (files.size() <= maxFiles) {
+            return;
+        }
+        Collections.sort(files);
+        for (Path file : files.subList(0, files.size() - maxFiles)) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Override
+    public void close() {
+        // 不中断正在写入的快照，中断会关闭 Files.newOutputStream 底层的 FileChannel
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        write();
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("dir", dir.toString());
+        map.put("intervalSeconds", intervalSeconds);
+        map.put("written", written.get());
+        map.put("failures", failures.get());
+        Path file = lastFile;
+        map.put("lastFile", file == null ? null : file.getFileName().toString());
+        return map;
+    }
+}
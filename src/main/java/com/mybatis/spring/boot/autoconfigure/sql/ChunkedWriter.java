@@ -0,0 +1,245 @@
+package com.mybatis.spring.boot.autoconfigure.sql;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * 固定大小分块输出的 Writer：写入的内容先放在最多 chunkSize 个字符的缓冲中，满了就交给 {@link #writeChunk} 输出，
+ * 内存占用只和 chunkSize 有关，和写入的总长度无关。缓冲从小到大按需扩容，短 sql 不会分配整个 chunkSize。
+ * <p>
+ * append(CharSequence, int, int) 直接复制字符，不像 {@link Writer} 的默认实现那样先创建子串
+ *
+ * @author spafka
+ */
+public abstract class ChunkedWriter extends Writer {
+
+    private static final int INITIAL_SIZE = 256;
+
+    private final int chunkSize;
+
+    private char[] chunk;
+
+    private int size;
+
+    private boolean closed;
+
+    protected ChunkedWriter(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        this.chunk = new char[Math.min(INITIAL_SIZE, chunkSize)];
+    }
+
+    /**
+     * 输出到 writer，每次最多 chunkSize 个字符
+     */
+    public static ChunkedWriter of(Writer writer, int chunkSize) {
+        return new ChunkedWriter(chunkSize) {
+            @Override
+            protected void writeChunk(char[] chars, int length, boolean last) throws IOException {
+                writer.write(chars, 0, length);
+                if (last) {
+                    writer.flush();
+                }
+            }
+        };
+    }
+
+    /**
+     * 按 charset 编码写入 buffer(可以是 direct buffer)，buffer 写满以及 close 时调用 drain 取走其中的内容，
+     * drain 返回后 buffer 中没有取走的字节会保留
+     */
+    public static ChunkedWriter of(ByteBuffer buffer, Charset charset, Drain drain, int chunkSize) {
+        return new ByteBufferWriter(buffer, charset, drain, chunkSize);
+    }
+
+    /**
+     * 输出缓冲中的字符
+     *
+     * @param chars  缓冲，只在调用期间有效
+     * @param length 缓冲中的字符数
+     * @param last   是否为 close 时的最后一块，可能为空
+     */
+    protected abstract void writeChunk(char[] chars, int length, boolean last) throws IOException;
+
+    /**
+     * 在 {@link #writeChunk} 中调用，把缓冲中 [from, from + length) 的字符留下，和后面写入的内容一起输出
+     */
+    protected void retain(int from, int length) {
+        System.arraycopy(chunk, from, chunk, 0, length);
+        size = length;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        ensureFree();
+        chunk[size++] = (char) c;
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) throws IOException {
+        int end = offset + length;
+        while (offset < end) {
+            ensureFree();
+            int count = Math.min(end - offset, chunk.length - size);
+            System.arraycopy(chars, offset, chunk, size, count);
+            size += count;
+            offset += count;
+        }
+    }
+
+    @Override
+    public void write(String text, int offset, int length) throws IOException {
+        int end = offset + length;
+        while (offset < end) {
+            ensureFree();
+            int count = Math.min(end - offset, chunk.length - size);
+            text.getChars(offset, offset + count, chunk, size);
+            size += count;
+            offset += count;
+        }
+    }
+
+    @Override
+    public ChunkedWriter append(char c) throws IOException {
+        write(c);
+        return this;
+    }
+
+    @Override
+    public ChunkedWriter append(CharSequence text) throws IOException {
+        CharSequence value = text == null ? "null" : text;
+        return append(value, 0, value.length());
+    }
+
+    @Override
+    public ChunkedWriter append(CharSequence text, int start, int end) throws IOException {
+        if (text == null) {
+            return append("null", start, end);
+        }
+        if (text instanceof String) {
+            write((String) text, start, end - start);
+            return this;
+        }
+        while (start < end) {
+            ensureFree();
+            int count = Math.min(end - start, chunk.length - size);
+            for (int i = 0; i < count; i++) {
+                chunk[size++] = text.charAt(start++);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * 输出缓冲中已有的字符
+     */
+    @Override
+    public void flush() throws IOException {
+        if (size > 0) {
+            int length = size;
+            size = 0;
+            writeChunk(chunk, length, false);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        int length = size;
+        size = 0;
+        writeChunk(chunk, length, true);
+    }
+
+    private void ensureFree() throws IOException {
+        if (closed) {
+            throw new IOException("writer closed");
+        }
+        if (size < chunk.length) {
+            return;
+        }
+        if (chunk.length < chunkSize) {
+            char[] grown = new char[Math.min(chunk.length << 1, chunkSize)];
+            System.arraycopy(chunk, 0, grown, 0, size);
+            chunk = grown;
+            return;
+        }
+        flush();
+    }
+
+    /**
+     * 取走 ByteBuffer 中的内容，eg: {@code buffer -> { while (buffer.hasRemaining()) channel.write(buffer); }}
+     */
+    @FunctionalInterface
+    public interface Drain {
+
+        /**
+         * @param buffer 已经 flip，可读
+         */
+        void drain(ByteBuffer buffer) throws IOException;
+    }
+
+    private static final class ByteBufferWriter extends ChunkedWriter {
+
+        private final ByteBuffer buffer;
+
+        private final CharsetEncoder encoder;
+
+        private final Drain drain;
+
+        ByteBufferWriter(ByteBuffer buffer, Charset charset, Drain drain, int chunkSize) {
+            super(chunkSize);
+            this.buffer = buffer;
+            this.encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            this.drain = drain;
+        }
+
+        @Override
+        protected void writeChunk(char[] chars, int length, boolean last) throws IOException {
+            CharBuffer in = CharBuffer.wrap(chars, 0, length);
+            while (true) {
+                CoderResult result = encoder.encode(in, buffer, last);
+                if (result.isOverflow()) {
+                    drain();
+                } else if (result.isError()) {
+                    result.throwException();
+                } else {
+                    break;
+                }
+            }
+            if (last) {
+                while (encoder.flush(buffer).isOverflow()) {
+                    drain();
+                }
+                drain();
+            } else if (in.hasRemaining()) {
+                // 不完整的代理对留到下一块
+                retain(in.position(), in.remaining());
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            try {
+                drain.drain(buffer);
+            } finally {
+                buffer.compact();
+            }
+            if (!buffer.hasRemaining()) {
+                throw new IOException("drain did not consume any byte");
+            }
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package com.mybatis.spring.boot.autoconfigure.sql;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * sql 指纹，同一条语句不同参数、不同 foreach 长度得到同一个结果，用作统计的聚合 key：
+ * <ul>
+ * <li>字符串、数字字面量替换为 ?，正负号一起替换(-1.5e3 =&gt; ?)，去掉注释；
+ * 双引号按 mysql 的默认模式当作字符串("abc" =&gt; ?)，'.' 之后的除外(t."name")</li>
+ * <li>关键字、标识符转小写(反引号的标识符不变)，空白规整为一个空格，括号、逗号、点号两侧的空白统一</li>
+ * <li>IN (?, ?, ...) 以及 IN ((?, ?), (?, ?), ...) 不论长度都写成 in(?+)</li>
+ * <li>VALUES (...), (...) 只保留第一行，单行和多行插入得到同一个结果</li>
+ * </ul>
+ * 基于 {@link SqlLexer} 一次线性扫描完成
+ * <pre>
+ * select * from t where id in (1,2,3) and name = 'a'  =&gt;  select * from t where id in(?+) and name = ?
+ * </pre>
+ *
+ * @author spafka
+ */
+public final class SqlFingerprint {
+
+    /**
+     * 这些关键字之后的 + / - 是正负号，不是加减
+     */
+    private static final Set<String> OPERAND_KEYWORDS = new HashSet<>(Arrays.asList(
+            "select", "where", "and", "or", "not", "when", "then", "else", "between", "like", "limit", "offset", "interval", "return"));
+
+    private SqlFingerprint() {
+    }
+
+    public static String of(CharSequence sql) {
+        return new Builder(sql).build();
+    }
+
+    private static final class Builder {
+
+        private final SqlLexer lexer;
+
+        private final StringBuilder sb;
+
+        /**
+         * 上一个输出的 token 之后是否不需要空格：开头、'(' 或者 '.' 之后
+         */
+        private boolean noSpaceAfter = true;
+
+        /**
+         * 上一个输出的 token 是否为单词、字面量等，决定 '(' 前是否加空格
+         */
+        private boolean afterWord;
+
+        private boolean afterIn;
+
+        /**
+         * 正在折叠的 IN 列表中已经跳过的值(或者括号中的一组值)个数，-1 表示不在 IN 列表中
+         */
+        private int inValues = -1;
+
+        private boolean inExpectValue;
+
+        /**
+         * IN 列表 '(' 之后的位置，不是简单的值列表时回到这里按普通 token 重新处理
+         */
+        private int inStart;
+
+        /**
+         * 是否在 IN 列表的一组值 (?, ?) 中
+         */
+        private boolean inTuple;
+
+        /**
+         * 下一个 token 是否为操作数的位置(开头、运算符、'('、','、where 等关键字之后)，此时的 + / - 是正负号
+         */
+        private boolean operandExpected = true;
+
+        private boolean afterValues;
+
+        /**
+         * VALUES 的第一行之后的括号深度，-1 表示不在 VALUES 中
+         */
+        private int valuesDepth = -1;
+
+        /**
+         * 已经读完 VALUES 的第一行，后面的 ',' 先不输出
+         */
+        private boolean valuesRowDone;
+
+        private boolean pendingComma;
+
+        private int skipDepth;
+
+        Builder(CharSequence sql) {
+            this.lexer = new SqlLexer(sql);
+            this.sb = new StringBuilder(Math.min(sql.length(), 4096));
+        }
+
+        String build() {
+            do {
+                while (lexer.next()) {
+                    SqlLexer.Type type = lexer.type();
+                    if (type == SqlLexer.Type.WHITESPACE || type == SqlLexer.Type.COMMENT) {
+                        continue;
+                    }
+                    if (skipDepth > 0) {
+                        skipRow();
+                    } else if (inValues >= 0) {
+                        inList(type);
+                    } else if (valuesRowDone) {
+                        afterValuesRow();
+                    } else {
+                        token(type);
+                    }
+                }
+                // 没有结束的 IN 列表
+            } while (rewindInList());
+            if (pendingComma) {
+                emit(",", false);
+            }
+            return sb.toString();
+        }
+
+        private void token(SqlLexer.Type type) {
+            if (type == SqlLexer.Type.OPERATOR && operandExpected && isSign()) {
+                // 正负号和后面的字面量一起替换为 ?
+                return;
+            }
+            if (type == SqlLexer.Type.OPERATOR && lexer.end() - lexer.start() > 1 && endsWithSign()) {
+                // eg: a=-1 中的 =- 只输出 =
+                emit(lexer.sql().subSequence(lexer.start(), lexer.end() - 1).toString(), false);
+                afterIn = false;
+                afterValues = false;
+                operandExpected = true;
+                return;
+            }
+            boolean wasAfterIn = afterIn;
+            boolean wasAfterValues = afterValues;
+            afterIn = false;
+            afterValues = false;
+            operandExpected = type == SqlLexer.Type.OPERATOR || lexer.is('(') || lexer.is(',')
+                    || (type == SqlLexer.Type.WORD && isOperandKeyword());
+            if (lexer.is('(')) {
+                emit("(", false);
+                if (wasAfterIn) {
+                    inValues = 0;
+                    inExpectValue = true;
+                    inTuple = false;
+                    inStart = lexer.end();
+                } else if (wasAfterValues) {
+                    valuesDepth = 1;
+                } else if (valuesDepth > 0) {
+                    valuesDepth++;
+                }
+                return;
+            }
+            if (lexer.is(')') && valuesDepth > 0) {
+                emit(")", false);
+                if (--valuesDepth == 0) {
+                    valuesDepth = -1;
+                    valuesRowDone = true;
+                }
+                return;
+            }
+            if (isDoubleQuotedString(type)) {
+                emit("?", true);
+                return;
+            }
+            switch (type) {
+                case STRING:
+                case NUMBER:
+                case PLACEHOLDER:
+                    emit("?", true);
+                    break;
+                case WORD:
+                    afterIn = lexer.is("in");
+                    afterValues = lexer.is("values") || lexer.is("value");
+                    emitLowerCase();
+                    break;
+                case QUOTED_IDENTIFIER:
+                    emitToken(true);
+                    break;
+                default:
+                    emitToken(false);
+            }
+        }
+
+        private void inList(SqlLexer.Type type) {
+            if (inExpectValue) {
+                if (type == SqlLexer.Type.OPERATOR && isSign()) {
+                    return;
+                }
+                if (isValue(type) || isDoubleQuotedString(type)) {
+                    inExpectValue = false;
+                    if (!inTuple) {
+                        inValues++;
+                    }
+                    return;
+                }
+                if (lexer.is('(') && !inTuple) {
+                    inTuple = true;
+                    return;
+                }
+            } else if (lexer.is(',')) {
+                inExpectValue = true;
+                return;
+            } else if (lexer.is(')') && inTuple) {
+                inTuple = false;
+                inValues++;
+                return;
+            } else if (lexer.is(')') && inValues > 0) {
+                emit("?+", true);
+                inValues = -1;
+                emit(")", false);
+                operandExpected = false;
+                return;
+            }
+            // 不是简单的值列表(eg: 子查询)，回到 '(' 之后按普通 token 处理
+            rewindInList();
+        }
+
+        /**
+         * @return 是否在 IN 列表中，需要从 '(' 之后重新扫描
+         */
+        private boolean rewindInList() {
+            if (inValues < 0) {
+                return false;
+            }
+            inValues = -1;
+            inTuple = false;
+            operandExpected = true;
+            lexer.rewind(inStart);
+            return true;
+        }
+
+        private static boolean isValue(SqlLexer.Type type) {
+            return type == SqlLexer.Type.STRING || type == SqlLexer.Type.NUMBER || type == SqlLexer.Type.PLACEHOLDER;
+        }
+
+        /**
+         * 当前 token 为 "..."，并且不在 '.' 之后
+         */
+        private boolean isDoubleQuotedString(SqlLexer.Type type) {
+            return type == SqlLexer.Type.QUOTED_IDENTIFIER && lexer.first() == '"'
+                    && (sb.length() == 0 || sb.charAt(sb.length() - 1) != '.');
+        }
+
+        /**
+         * 当前 token 为 + 或 -，并且后面是字面量或者 ?
+         */
+        private boolean isSign() {
+            return (lexer.is('-') || lexer.is('+')) && isValue(lexer.peek());
+        }
+
+        private boolean endsWithSign() {
+            char last = lexer.sql().charAt(lexer.end() - 1);
+            return (last == '-' || last == '+') && isValue(lexer.peek());
+        }
+
+        private boolean isOperandKeyword() {
+            for (String keyword : OPERAND_KEYWORDS) {
+                if (lexer.is(keyword)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void afterValuesRow() {
+            if (!pendingComma && lexer.is(',')) {
+                pendingComma = true;
+                return;
+            }
+            if (pendingComma && lexer.is('(')) {
+                // 后面的行不输出
+                pendingComma = false;
+                skipDepth = 1;
+                return;
+            }
+            valuesRowDone = false;
+            if (pendingComma) {
+                pendingComma = false;
+                emit(",", false);
+            }
+            token(lexer.type());
+        }
+
+        private void skipRow() {
+            if (lexer.is('(')) {
+                skipDepth++;
+            } else if (lexer.is(')')) {
+                skipDepth--;
+            }
+        }
+
+        private void emitLowerCase() {
+            space();
+            for (int i = lexer.start(); i < lexer.end(); i++) {
+                sb.append(Character.toLowerCase(lexer.sql().charAt(i)));
+            }
+            after(true);
+        }
+
+        private void emitToken(boolean word) {
+            if (lexer.is(')') || lexer.is(',') || lexer.is('.') || lexer.is(';')) {
+                noSpaceAfter = true;
+            }
+            space();
+            lexer.appendTo(sb);
+            after(word);
+        }
+
+        private void emit(String text, boolean word) {
+            char c = text.charAt(0);
+            if (c == ')' || c == ',') {
+                noSpaceAfter = true;
+            }
+            if (c == '(' && afterWord) {
+                noSpaceAfter = true;
+            }
+            space();
+            sb.append(text);
+            afterWord = word;
+            noSpaceAfter = c == '(';
+        }
+
+        private void space() {
+            if (!noSpaceAfter && sb.length() > 0) {
+                sb.append(' ');
+            }
+        }
+
+        private void after(boolean word) {
+            afterWord = word;
+            noSpaceAfter = lexer.is('(') || lexer.is('.');
+        }
+    }
+}
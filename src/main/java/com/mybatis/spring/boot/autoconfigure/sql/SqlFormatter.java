@@ -0,0 +1,385 @@
+package com.mybatis.spring.boot.autoconfigure.sql;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * 基于 {@link SqlLexer} token 的流式 sql 美化，不解析语法树，直接写入输出：
+ * <ul>
+ * <li>select / from / where / group by / order by / having / limit / union / values / set / join 等子句另起一行，
+ * insert / update / delete 只会出现在语句开头，不换行(eg: on duplicate key update、for update)</li>
+ * <li>values / value 只在 insert / replace 语句中、set 只在 update 语句中作为子句，且每条语句只换行一次，
+ * 其他位置按列名处理(eg: select value from kv、on duplicate key update value = values(value))</li>
+ * <li>子句中的 and / or 另起一行并缩进(between ... and、case ... end 中的除外)</li>
+ * <li>( select ...) 子查询整体缩进一级</li>
+ * <li>token 之间的空白规整为一个空格，原本没有空白的地方不加空格，token 本身原样输出(不改大小写)</li>
+ * </ul>
+ * 可以通过 {@link #token} 逐个喂入 token，参数值等不在原 sql 中的文本也可以作为 token 写入
+ * <pre>
+ * select id, name from t where a = 1 and b in (select b from u) order by id
+ * =&gt;
+ * select id, name
+ * from t
+ * where a = 1
+ * 	and b in (
+ * 		select b
+ * 		from u
+ * 	)
+ * order by id
+ * </pre>
+ *
+ * @author spafka
+ */
+public final class SqlFormatter {
+
+    private static final int MAX_DEPTH = 64;
+
+    private final Appendable out;
+
+    /**
+     * false 时只规整空白，不换行
+     */
+    private final boolean pretty;
+
+    /**
+     * 每层括号是否为子查询，超过 MAX_DEPTH 的括号只计数
+     */
+    private final boolean[] subqueries = new boolean[MAX_DEPTH];
+
+    /**
+     * 每层子查询开始前的子句缩进
+     */
+    private final int[] outerIndents = new int[MAX_DEPTH];
+
+    private int parenDepth;
+
+    /**
+     * 当前子句的缩进
+     */
+    private int indent;
+
+    /**
+     * 当前行的缩进
+     */
+    private int lineIndent;
+
+    /**
+     * 刚输出 '('，下一个 token 是 select 时为子查询
+     */
+    private boolean afterOpenParen;
+
+    private boolean pendingSpace;
+
+    private boolean lineStarted;
+
+    /**
+     * 上一个非空白 token 是否为运算符、',' 或 '.'，这些 token 后面的关键字不换行(eg: t.order、a = values(a))
+     */
+    private boolean afterOperator;
+
+    /**
+     * 下一个 '*' 是否为 select 的列(select *、t.*、count(*))，而不是乘号
+     */
+    private boolean starOperand;
+
+    /**
+     * 下一个 word 是否为语句的第一个 word
+     */
+    private boolean statementStart = true;
+
+    /**
+     * insert / replace 语句还没有遇到 values 子句
+     */
+    private boolean valuesExpected;
+
+    /**
+     * update 语句还没有遇到 set 子句
+     */
+    private boolean setExpected;
+
+    private boolean inBetween;
+
+    private int caseDepth;
+
+    /**
+     * 暂存的 left / inner 等 join 修饰词，遇到 join 时一起换行，否则原样输出(eg: left(name, 3))
+     */
+    private final StringBuilder joinModifiers = new StringBuilder();
+
+    private boolean spaceBeforeJoinModifiers;
+
+    public SqlFormatter(Appendable out, boolean pretty) {
+        this.out = out;
+        this.pretty = pretty;
+    }
+
+    public static String format(CharSequence sql) {
+        StringBuilder sb = new StringBuilder(sql.length() + (sql.length() >> 3));
+        try {
+            format(sql, sb, true);
+        } catch (IOException e) {
+            // StringBuilder 不会抛出 IOException
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    public static void format(CharSequence sql, Appendable out, boolean pretty) throws IOException {
+        SqlFormatter formatter = new SqlFormatter(out, pretty);
+        SqlLexer lexer = new SqlLexer(sql);
+        while (lexer.next()) {
+            formatter.token(lexer.type(), sql, lexer.start(), lexer.end());
+        }
+        formatter.finish();
+    }
+
+    /**
+     * 写入一个 token，text 的 [start, end) 部分
+     */
+    public void token(SqlLexer.Type type, CharSequence text, int start, int end) throws IOException {
+        if (type == SqlLexer.Type.WHITESPACE) {
+            pendingSpace = true;
+            return;
+        }
+        if (type == SqlLexer.Type.COMMENT) {
+            flushJoinModifiers();
+            write(text, start, end);
+            char c = text.charAt(start);
+            if (c == '-' || c == '#') {
+                // 单行注释后面必须换行
+                newLine(pretty ? indent : 0);
+            }
+            return;
+        }
+        if (!pretty) {
+            write(text, start, end);
+            return;
+        }
+
+        boolean openParen = afterOpenParen;
+        afterOpenParen = false;
+        boolean star = starOperand;
+        starOperand = false;
+        if (type == SqlLexer.Type.WORD) {
+            word(text, start, end, openParen);
+        } else if (type == SqlLexer.Type.PUNCTUATION) {
+            flushJoinModifiers();
+            punctuation(text.charAt(start), text, start, end);
+        } else {
+            flushJoinModifiers();
+            write(text, start, end);
+            afterOperator = type == SqlLexer.Type.OPERATOR && !(star && end - start == 1 && text.charAt(start) == '*');
+        }
+    }
+
+    /**
+     * 输出暂存的内容，所有 token 写完之后调用
+     */
+    public void finish() throws IOException {
+        flushJoinModifiers();
+    }
+
+    private void word(CharSequence text, int start, int end, boolean openParen) throws IOException {
+        boolean clauseLevel = isClauseLevel() && caseDepth == 0 && !afterOperator;
+        afterOperator = false;
+        starOperand = is(text, start, end, "select") || is(text, start, end, "distinct") || is(text, start, end, "all");
+        if (statementStart) {
+            statementStart = false;
+            valuesExpected = is(text, start, end, "insert") || is(text, start, end, "replace");
+            setExpected = is(text, start, end, "update");
+        }
+        if (openParen && is(text, start, end, "select")) {
+            // 子查询，相对 '(' 所在的行缩进一级
+            if (parenDepth <= MAX_DEPTH) {
+                subqueries[parenDepth - 1] = true;
+                outerIndents[parenDepth - 1] = indent;
+                indent = lineIndent + 1;
+            }
+            newLine(indent);
+            write(text, start, end);
+            return;
+        }
+        if (clauseLevel && isJoinModifier(text, start, end)) {
+            if (joinModifiers.length() > 0) {
+                joinModifiers.append(' ');
+            } else {
+                spaceBeforeJoinModifiers = pendingSpace;
+            }
+            pendingSpace = false;
+            joinModifiers.append(text, start, end);
+            return;
+        }
+        if (clauseLevel && is(text, start, end, "join")) {
+            boolean spaceBeforeJoin = pendingSpace;
+            if (lineStarted) {
+                newLine(indent);
+            }
+            if (joinModifiers.length() > 0) {
+                write(joinModifiers, 0, joinModifiers.length());
+                joinModifiers.setLength(0);
+                pendingSpace = spaceBeforeJoin;
+            }
+            write(text, start, end);
+            return;
+        }
+        flushJoinModifiers();
+
+        if (is(text, start, end, "case")) {
+            caseDepth++;
+        } else if (is(text, start, end, "end") && caseDepth > 0) {
+            caseDepth--;
+        } else if (is(text, start, end, "between")) {
+            inBetween = true;
+        } else if (clauseLevel && isClause(text, start, end) && isStatementClause(text, start, end)) {
+            inBetween = false;
+            if (lineStarted) {
+                newLine(indent);
+            }
+        } else if (clauseLevel && (is(text, start, end, "and") || is(text, start, end, "or"))) {
+            if (inBetween && is(text, start, end, "and")) {
+                inBetween = false;
+            } else {
+                newLine(indent + 1);
+            }
+        }
+        write(text, start, end);
+    }
+
+    private void punctuation(char c, CharSequence text, int start, int end) throws IOException {
+        afterOperator = c == ',' || c == '.';
+        starOperand = c == ',' || c == '.' || c == '(';
+        if (c == '(') {
+            parenDepth++;
+            if (parenDepth <= MAX_DEPTH) {
+                subqueries[parenDepth - 1] = false;
+            }
+            write(text, start, end);
+            afterOpenParen = true;
+            return;
+        }
+        if (c == ')' && parenDepth > 0) {
+            if (parenDepth <= MAX_DEPTH && subqueries[parenDepth - 1]) {
+                newLine(indent - 1);
+                indent = outerIndents[parenDepth - 1];
+            }
+            parenDepth--;
+            write(text, start, end);
+            return;
+        }
+        write(text, start, end);
+        if (c == ';') {
+            statementStart = true;
+            valuesExpected = false;
+            setExpected = false;
+            newLine(0);
+        }
+    }
+
+    private boolean isClauseLevel() {
+        return parenDepth == 0 || (parenDepth <= MAX_DEPTH && subqueries[parenDepth - 1]);
+    }
+
+    private void flushJoinModifiers() throws IOException {
+        if (joinModifiers.length() == 0) {
+            return;
+        }
+        boolean spaceAfter = pendingSpace;
+        pendingSpace = spaceBeforeJoinModifiers;
+        write(joinModifiers, 0, joinModifiers.length());
+        joinModifiers.setLength(0);
+        pendingSpace = spaceAfter;
+    }
+
+    private void write(CharSequence text, int start, int end) throws IOException {
+        space();
+        out.append(text, start, end);
+        lineStarted = true;
+    }
+
+    private void space() throws IOException {
+        if (pendingSpace && lineStarted) {
+            out.append(' ');
+        }
+        pendingSpace = false;
+    }
+
+    private void newLine(int level) throws IOException {
+        if (lineStarted) {
+            out.append('\n');
+        }
+        for (int i = 0; i < level; i++) {
+            out.append('\t');
+        }
+        lineIndent = level;
+        pendingSpace = false;
+        // 缩进之后的第一个 token 前不加空格
+        lineStarted = false;
+    }
+
+    private static boolean isClause(CharSequence text, int start, int end) {
+        switch (Character.toLowerCase(text.charAt(start))) {
+            case 'f':
+                return is(text, start, end, "from");
+            case 'g':
+                return is(text, start, end, "group");
+            case 'h':
+                return is(text, start, end, "having");
+            case 'l':
+                return is(text, start, end, "limit");
+            case 'o':
+                return is(text, start, end, "order") || is(text, start, end, "offset");
+            case 'r':
+                return is(text, start, end, "returning");
+            case 's':
+                return is(text, start, end, "select") || is(text, start, end, "set");
+            case 'u':
+                return is(text, start, end, "union");
+            case 'v':
+                return is(text, start, end, "values") || is(text, start, end, "value");
+            case 'w':
+                return is(text, start, end, "where");
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * values / value / set 是否为当前语句的子句，是则消费掉，后面再出现时按列名处理
+     */
+    private boolean isStatementClause(CharSequence text, int start, int end) {
+        char c = Character.toLowerCase(text.charAt(start));
+        if (c == 'v') {
+            boolean clause = valuesExpected;
+            valuesExpected = false;
+            return clause;
+        }
+        if (c == 's' && end - start == 3) {
+            boolean clause = setExpected;
+            setExpected = false;
+            return clause;
+        }
+        if (c == 's') {
+            // insert ... select 没有 values 子句
+            valuesExpected = false;
+        }
+        return true;
+    }
+
+    private static boolean isJoinModifier(CharSequence text, int start, int end) {
+        return is(text, start, end, "left") || is(text, start, end, "right") || is(text, start, end, "inner")
+                || is(text, start, end, "outer") || is(text, start, end, "cross") || is(text, start, end, "full")
+                || is(text, start, end, "natural");
+    }
+
+    private static boolean is(CharSequence text, int start, int end, String word) {
+        if (end - start != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.toLowerCase(text.charAt(start + i)) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
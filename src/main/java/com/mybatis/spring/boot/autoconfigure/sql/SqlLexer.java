@@ -0,0 +1,310 @@
+package com.mybatis.spring.boot.autoconfigure.sql;
+
+/**
+ * 手写的 sql 词法分析，线性扫描、不构建语法树、不分配字符串：每次 {@link #next()} 之后通过
+ * {@link #type()}、{@link #start()}、{@link #end()} 取当前 token 在原 sql 中的位置。
+ * 兼容 mysql 的 # 注释、反引号以及字符串中的反斜杠转义
+ * <pre>
+ * SqlLexer lexer = new SqlLexer(sql);
+ * while (lexer.next()) {
+ *     if (lexer.type() == SqlLexer.Type.WORD &amp;&amp; lexer.is("select")) ...
+ * }
+ * </pre>
+ *
+ * @author spafka
+ */
+public final class SqlLexer {
+
+    public enum Type {
+        /**
+         * 连续的空白
+         */
+        WHITESPACE,
+        /**
+         * -- / # 单行注释，或者 /* *&#47; 块注释
+         */
+        COMMENT,
+        /**
+         * 关键字、标识符、函数名
+         */
+        WORD,
+        /**
+         * `name` 或者 "name"
+         */
+        QUOTED_IDENTIFIER,
+        /**
+         * 'text'
+         */
+        STRING,
+        NUMBER,
+        /**
+         * jdbc 占位符 ?
+         */
+        PLACEHOLDER,
+        /**
+         * ( ) , ; . 单个字符
+         */
+        PUNCTUATION,
+        /**
+         * = &lt;&gt; &gt;= || 等连续的运算符字符
+         */
+        OPERATOR
+    }
+
+    private final CharSequence sql;
+
+    private final int length;
+
+    private int position;
+
+    private Type type;
+
+    private int start;
+
+    public SqlLexer(CharSequence sql) {
+        this.sql = sql;
+        this.length = sql.length();
+    }
+
+    /**
+     * @return 是否还有 token
+     */
+    public boolean next() {
+        start = position;
+        if (position >= length) {
+            type = null;
+            return false;
+        }
+        char c = sql.charAt(position);
+        if (Character.isWhitespace(c)) {
+            type = Type.WHITESPACE;
+            do {
+                position++;
+            } while (position < length && Character.isWhitespace(sql.charAt(position)));
+        } else if (c == '#' || (c == '-' && peek(1) == '-')) {
+            type = Type.COMMENT;
+            while (position < length && sql.charAt(position) != '\n') {
+                position++;
+            }
+        } else if (c == '/' && peek(1) == '*') {
+            type = Type.COMMENT;
+            int close = indexOf("*/", position + 2);
+            position = close < 0 ? length : close + 2;
+        } else if (c == '\'') {
+            type = Type.STRING;
+            position = closeQuote('\'', true);
+        } else if (c == '`' || c == '"') {
+            type = Type.QUOTED_IDENTIFIER;
+            position = closeQuote(c, false);
+        } else if (c == '?') {
+            type = Type.PLACEHOLDER;
+            position++;
+        } else if (isDigit(c) || (c == '.' && isDigit(peek(1)))) {
+            type = Type.NUMBER;
+            scanNumber();
+        } else if (isWordStart(c)) {
+            type = Type.WORD;
+            do {
+                position++;
+            } while (position < length && isWordPart(sql.charAt(position)));
+        } else if (isOperator(c)) {
+            type = Type.OPERATOR;
+            do {
+                position++;
+            } while (position < length && isOperator(sql.charAt(position)) && !startsComment(position));
+        } else {
+            type = Type.PUNCTUATION;
+            position++;
+        }
+        return true;
+    }
+
+    /**
+     * 跳过 position 之前的内容，下一次 {@link #next()} 从 position 开始，position 应当是一个 token 的开始
+     */
+    public void skipTo(int position) {
+        this.position = Math.min(Math.max(position, this.position), length);
+    }
+
+    /**
+     * 回到 position 重新扫描，position 应当是一个 token 的开始
+     */
+    public void rewind(int position) {
+        this.position = Math.max(0, Math.min(position, length));
+    }
+
+    /**
+     * 下一个不是空白、注释的 token 的类型，不改变当前位置，没有时为 null
+     */
+    public Type peek() {
+        int savedStart = start;
+        int savedPosition = position;
+        Type savedType = type;
+        Type next = null;
+        while (next()) {
+            if (type != Type.WHITESPACE && type != Type.COMMENT) {
+                next = type;
+                break;
+            }
+        }
+        start = savedStart;
+        position = savedPosition;
+        type = savedType;
+        return next;
+    }
+
+    public Type type() {
+        return type;
+    }
+
+    public int start() {
+        return start;
+    }
+
+    public int end() {
+        return position;
+    }
+
+    /**
+     * 当前 token 的第一个字符
+     */
+    public char first() {
+        return sql.charAt(start);
+    }
+
+    /**
+     * 当前 token 是否为单个字符 c
+     */
+    public boolean is(char c) {
+        return position - start == 1 && sql.charAt(start) == c;
+    }
+
+    /**
+     * 当前 token 是否为 word(忽略大小写)
+     */
+    public boolean is(String word) {
+        int tokenLength = position - start;
+        if (tokenLength != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < tokenLength; i++) {
+            if (Character.toLowerCase(sql.charAt(start + i)) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public CharSequence sql() {
+        return sql;
+    }
+
+    /**
+     * 把当前 token 写入 sb，不产生中间字符串
+     */
+    public StringBuilder appendTo(StringBuilder sb) {
+        return sb.append(sql, start, position);
+    }
+
+    private char peek(int offset) {
+        int index = position + offset;
+        return index < length ? sql.charAt(index) : '\0';
+    }
+
+    private boolean startsComment(int index) {
+        char c = sql.charAt(index);
+        char next = index + 1 < length ? sql.charAt(index + 1) : '\0';
+        return (c == '-' && next == '-') || (c == '/' && next == '*');
+    }
+
+    private int indexOf(String target, int from) {
+        for (int i = from; i + target.length() <= length; i++) {
+            if (sql.charAt(i) == target.charAt(0) && sql.charAt(i + 1) == target.charAt(1)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return 结束引号之后的位置，没有结束引号时为 sql 末尾
+     */
+    private int closeQuote(char quote, boolean backslashEscape) {
+        int i = position + 1;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (backslashEscape && c == '\\') {
+                i += 2;
+            } else if (c == quote) {
+                // 连续两个引号为转义
+                if (i + 1 < length && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                } else {
+                    return i + 1;
+                }
+            } else {
+                i++;
+            }
+        }
+        return length;
+    }
+
+    private void scanNumber() {
+        if (sql.charAt(position) == '0' && (peek(1) == 'x' || peek(1) == 'X')) {
+            position += 2;
+            while (position < length && Character.digit(sql.charAt(position), 16) >= 0) {
+                position++;
+            }
+            return;
+        }
+        while (position < length && (isDigit(sql.charAt(position)) || sql.charAt(position) == '.')) {
+            position++;
+        }
+        if (position < length && (sql.charAt(position) == 'e' || sql.charAt(position) == 'E')) {
+            int exponent = position + 1;
+            if (exponent < length && (sql.charAt(exponent) == '+' || sql.charAt(exponent) == '-')) {
+                exponent++;
+            }
+            if (exponent < length && isDigit(sql.charAt(exponent))) {
+                position = exponent;
+                while (position < length && isDigit(sql.charAt(position))) {
+                    position++;
+                }
+            }
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWordStart(char c) {
+        return Character.isLetter(c) || c == '_' || c == '$' || c == '@';
+    }
+
+    private static boolean isWordPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '@';
+    }
+
+    private static boolean isOperator(char c) {
+        switch (c) {
+            case '=':
+            case '<':
+            case '>':
+            case '!':
+            case '|':
+            case '&':
+            case '+':
+            case '-':
+            case '*':
+            case '/':
+            case '%':
+            case '^':
+            case '~':
+            case ':':
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.mybatis.spring.boot.autoconfigure.stats;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存的命中、未命中次数，按数据源、statement id 汇总
+ *
+ * @author spafka
+ */
+public class CacheStats {
+
+    private final ConcurrentMap<String, ConcurrentMap<String, Counts>> dataSources = new ConcurrentHashMap<>();
+
+    public Counts counts(String dataSource, String statementId) {
+        ConcurrentMap<String, Counts> statements = dataSources.get(dataSource);
+        if (statements == null) {
+            statements = dataSources.computeIfAbsent(dataSource, k -> new ConcurrentHashMap<>());
+        }
+        Counts counts = statements.get(statementId);
+        if (counts == null) {
+            counts = statements.computeIfAbsent(statementId, k -> new Counts());
+        }
+        return counts;
+    }
+
+    public void reset() {
+        dataSources.clear();
+    }
+
+    /**
+     * 每个数据源下按未命中次数倒序，排在前面的是最值得调整 ttl 的语句
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        dataSources.forEach((dataSource, statements) -> {
+            Map<String, Object> byId = new LinkedHashMap<>();
+            statements.entrySet().stream()
+                    .sorted(Comparator.comparingLong((Map.Entry<String, Counts> e) -> e.getValue().misses.sum()).reversed())
+                    .forEach(e -> byId.put(e.getKey(), e.getValue().toMap()));
+            map.put(dataSource, byId);
+        });
+        return map;
+    }
+
+    public static class Counts {
+
+        private final LongAdder hits = new LongAdder();
+
+        private final LongAdder misses = new LongAdder();
+
+        public void hit() {
+            hits.increment();
+        }
+
+        public void miss() {
+            misses.increment();
+        }
+
+        public Map<String, Object> toMap() {
+            long hitCount = hits.sum();
+            long missCount = misses.sum();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("hits", hitCount);
+            map.put("misses", missCount);
+            map.put("hitRate", hitCount + missCount == 0 ? 0 : Math.round(hitCount * 1000.0 / (hitCount + missCount)) / 1000.0);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.mybatis.spring.boot.autoconfigure.stats;
+
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个 statement 查询出来的列与 ResultMap 实际映射的列的比较结果，第一次执行时分析一次，
+ * 之后只对有多余列的 statement 累计执行次数和行数
+ *
+ * @author spafka
+ */
+@Getter
+public class ColumnUsage {
+
+    /**
+     * 无法分析(例如取不到 ResultSetMetaData)时使用，不再重复分析
+     */
+    public static final ColumnUsage UNKNOWN = new ColumnUsage(null, Collections.emptyList(), Collections.emptyList(), 0);
+
+    private final String id;
+
+    private final List<String> fetchedColumns;
+
+    /**
+     * 查询了但没有任何属性映射的列
+     */
+    private final List<String> unusedColumns;
+
+    /**
+     * 多余列每行大约占用的字节数，按列类型和长度粗略估算
+     */
+    private final long unusedBytesPerRow;
+
+    private final LongAdder executions = new LongAdder();
+
+    private final LongAdder rows = new LongAdder();
+
+    public ColumnUsage(String id, List<String> fetchedColumns, List<String> unusedColumns, long unusedBytesPerRow) {
+        this.id = id;
+        this.fetchedColumns = fetchedColumns;
+        this.unusedColumns = unusedColumns;
+        this.unusedBytesPerRow = unusedBytesPerRow;
+    }
+
+    public boolean hasUnusedColumns() {
+        return !unusedColumns.isEmpty();
+    }
+
+    public long getWastedBytes() {
+        return rows.sum() * unusedBytesPerRow;
+    }
+
+    public void reset() {
+        executions.reset();
+        rows.reset();
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("fetched", fetchedColumns.size());
+        map.put("unused", unusedColumns);
+        map.put("unusedBytesPerRow", unusedBytesPerRow);
+        map.put("executions", executions.sum());
+        map.put("rows", rows.sum());
+        map.put("wastedBytes", getWastedBytes());
+        return map;
+    }
+}
@@ -0,0 +1,49 @@
+package com.mybatis.spring.boot.autoconfigure.stats;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 按数据源、statement id 汇总的多余列分析结果
+ *
+ * @author spafka
+ */
+public class ColumnUsageStats {
+
+    private final ConcurrentMap<String, ConcurrentMap<String, ColumnUsage>> dataSources = new ConcurrentHashMap<>();
+
+    /**
+     * 同一个 statement 只保留第一次的分析结果
+     */
+    public ColumnUsage register(String dataSource, ColumnUsage usage) {
+        ColumnUsage existing = dataSources.computeIfAbsent(dataSource, k -> new ConcurrentHashMap<>())
+                .putIfAbsent(usage.getId(), usage);
+        return existing == null ? usage : existing;
+    }
+
+    /**
+     * 只清空计数，分析结果保留
+     */
+    public void reset() {
+        dataSources.values().forEach(statements -> statements.values().forEach(ColumnUsage::reset));
+    }
+
+    /**
+     * 每个数据源下只列出有多余列的 statement，按浪费的字节数倒序
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        dataSources.forEach((dataSource, statements) -> {
+            Map<String, Object> byId = new LinkedHashMap<>();
+            statements.values().stream()
+                    .filter(ColumnUsage::hasUnusedColumns)
+                    .sorted(Comparator.comparingLong(ColumnUsage::getWastedBytes).reversed())
+                    .forEach(usage -> byId.put(usage.getId(), usage.toMap()));
+            map.put(dataSource, byId);
+        });
+        return map;
+    }
+}
@@ -0,0 +1,147 @@
+package com.mybatis.spring.boot.autoconfigure.stats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * 超过阈值的深分页(LIMIT offset, n)，按数据源、statement id 汇总，同时记录触发它们的请求入口
+ *
+ * @author spafka
+ */
+public class DeepOffsetStats {
+
+    /**
+     * 每个 statement 保留的最大 offset 个数
+     */
+    private static final int LARGEST_OFFSETS = 5;
+
+    /**
+     * 每个 statement 最多记录的请求入口个数
+     */
+    private static final int MAX_ENDPOINTS = 32;
+
+    /**
+     * 不在请求中执行时(例如定时任务)使用的入口名称
+     */
+    public static final String NO_ENDPOINT = "-";
+
+    private final ConcurrentMap<String, ConcurrentMap<String, DeepOffset>> dataSources = new ConcurrentHashMap<>();
+
+    /**
+     * @return 该 statement 是否第一次出现深分页
+     */
+    public boolean record(String dataSource, String statementId, long offset, String endpoint, String keysetHint) {
+        ConcurrentMap<String, DeepOffset> statements = dataSources.computeIfAbsent(dataSource, k -> new ConcurrentHashMap<>());
+        DeepOffset deepOffset = statements.get(statementId);
+        boolean first = false;
+        if (deepOffset == null) {
+            DeepOffset created = new DeepOffset(keysetHint);
+            deepOffset = statements.putIfAbsent(statementId, created);
+            if (deepOffset == null) {
+                deepOffset = created;
+                first = true;
+            }
+        }
+        deepOffset.record(offset, endpoint == null ? NO_ENDPOINT : endpoint);
+        return first;
+    }
+
+    public void reset() {
+        dataSources.clear();
+    }
+
+    /**
+     * statements: 每个数据源下按最大 offset 倒序；endpoints: 请求入口 -> 其中出现深分页的 statement，也就是需要改成 keyset 分页的接口
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> byDataSource = new LinkedHashMap<>();
+        Map<String, List<String>> byEndpoint = new TreeMap<>();
+        dataSources.forEach((dataSource, statements) -> {
+            Map<String, Object> byId = new LinkedHashMap<>();
+            statements.entrySet().stream()
+                    .sorted(Comparator.comparingLong((Map.Entry<String, DeepOffset> e) -> e.getValue().maxOffset()).reversed())
+                    .forEach(e -> {
+                        byId.put(e.getKey(), e.getValue().toMap());
+                        e.getValue().endpoints.keySet().forEach(endpoint ->
+                                byEndpoint.computeIfAbsent(endpoint, k -> new ArrayList<>()).add(dataSource + ":" + e.getKey()));
+                    });
+            byDataSource.put(dataSource, byId);
+        });
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("statements", byDataSource);
+        map.put("endpoints", byEndpoint);
+        return map;
+    }
+
+    private static class DeepOffset {
+
+        private final String keysetHint;
+
+        private final LongAdder count = new LongAdder();
+
+        /**
+         * 从大到小，0 表示空位；深分页本身不频繁，直接加锁
+         */
+        private final long[] largestOffsets = new long[LARGEST_OFFSETS];
+
+        private final ConcurrentMap<String, LongAdder> endpoints = new ConcurrentHashMap<>();
+
+        DeepOffset(String keysetHint) {
+            this.keysetHint = keysetHint;
+        }
+
+        void record(long offset, String endpoint) {
+            count.increment();
+            synchronized (largestOffsets) {
+                for (int i = 0; i < largestOffsets.length; i++) {
+                    if (offset == largestOffsets[i]) {
+                        break;
+                    }
+                    if (offset > largestOffsets[i]) {
+                        System.arraycopy(largestOffsets, i, largestOffsets, i + 1, largestOffsets.length - i - 1);
+                        largestOffsets[i] = offset;
+                        break;
+                    }
+                }
+            }
+            LongAdder counter = endpoints.get(endpoint);
+            if (counter == null) {
+                if (endpoints.size() >= MAX_ENDPOINTS) {
+                    return;
+                }
+                counter = endpoints.computeIfAbsent(endpoint, k -> new LongAdder());
+            }
+            counter.increment();
+        }
+
+        long maxOffset() {
+            synchronized (largestOffsets) {
+                return largestOffsets[0];
+            }
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("count", count.sum());
+            List<Long> offsets;
+            synchronized (largestOffsets) {
+                offsets = Arrays.stream(largestOffsets).filter(o -> o > 0).boxed().collect(Collectors.toList());
+            }
+            map.put("largestOffsets", offsets);
+            Map<String, Long> endpointCounts = new LinkedHashMap<>();
+            endpoints.forEach((endpoint, counter) -> endpointCounts.put(endpoint, counter.sum()));
+            map.put("endpoints", endpointCounts);
+            map.put("keyset", keysetHint);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.mybatis.spring.boot.autoconfigure.stats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一个 statement(动态 sql 为一个 sql 指纹)的耗时基线：最近一个窗口(固定执行次数)的耗时分布，
+ * 以及窗口 p95 和平均行数的指数加权平均(EWMA)。
+ * <p>
+ * 窗口分布和 {@link QuantileSketch} 的分桶相同，共 120 个计数，相对误差不超过 12.5%，内存和执行次数无关
+ *
+ * @author spafka
+ */
+public class LatencyBaseline {
+
+    private static final int BUCKETS = QuantileSketch.BUCKETS;
+
+    private final AtomicIntegerArray window = new AtomicIntegerArray(BUCKETS);
+
+    private final AtomicInteger windowCount = new AtomicInteger();
+
+    private final LongAdder windowRows = new LongAdder();
+
+    private final AtomicInteger windowRowCount = new AtomicInteger();
+
+    /**
+     * 以下在结束窗口时修改，由 synchronized 保护
+     */
+    private int windows;
+
+    private double baselineP95Micros;
+
+    private double baselineRows = -1;
+
+    private long lastP95Micros;
+
+    private double lastRows = -1;
+
+    private boolean regressed;
+
+    /**
+     * 进入退化状态时的基线
+     */
+    private double regressedFromMicros;
+
+    private long regressedSince;
+
+    /**
+     * @param rows 查询返回的行数或者更新的行数，未知时小于 0
+     * @return 每累计 windowSize 次返回一次 true，调用方应当调用 {@link #closeWindow}；
+     * 按整倍数判断而不是等于 windowSize，closeWindow 减去计数之前其他线程继续累加时也不会错过之后的窗口
+     */
+    boolean record(long nanos, long rows, int windowSize) {
+        window.incrementAndGet(QuantileSketch.LAYOUT.index(TimeUnit.NANOSECONDS.toMicros(nanos)));
+        if (rows >= 0) {
+            windowRows.add(rows);
+            windowRowCount.incrementAndGet();
+        }
+        int count = windowCount.incrementAndGet();
+        return count > 0 && count % windowSize == 0;
+    }
+
+    /**
+     * 结束当前窗口，更新基线
+     *
+     * @return 状态变化，没有变化时为 null
+     */
+    synchronized Change closeWindow(int windowSize, double ratio, double alpha, int warmupWindows, long minDeltaMicros) {
+        windowCount.addAndGet(-windowSize);
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = window.getAndSet(i, 0);
+            count += snapshot[i];
+        }
+        int rowCount = windowRowCount.getAndSet(0);
+        long rows = windowRows.sumThenReset();
+        if (count == 0) {
+            return null;
+        }
+        long p95 = QuantileSketch.LAYOUT.quantileMicros(snapshot, count, 0.95);
+        lastP95Micros = p95;
+        lastRows = rowCount == 0 ? -1 : rows / (double) rowCount;
+        windows++;
+
+        Change change = null;
+        if (windows > warmupWindows) {
+            boolean over = p95 > baselineP95Micros * ratio && p95 - baselineP95Micros >= minDeltaMicros;
+            if (over && !regressed) {
+                regressed = true;
+                regressedFromMicros = baselineP95Micros;
+                regressedSince = System.currentTimeMillis();
+                change = new Change(Change.Kind.REGRESSED, baselineP95Micros, baselineRows, p95, lastRows);
+            } else if (!over && regressed) {
+                regressed = false;
+                // 回到原基线附近是恢复，否则是基线已经跟上了新的耗时
+                Change.Kind kind = p95 <= regressedFromMicros * ratio ? Change.Kind.RECOVERED : Change.Kind.ADOPTED;
+                change = new Change(kind, baselineP95Micros, baselineRows, p95, lastRows);
+            }
+        }
+        baselineP95Micros = windows == 1 ? p95 : alpha * p95 + (1 - alpha) * baselineP95Micros;
+        if (lastRows >= 0) {
+            baselineRows = baselineRows < 0 ? lastRows : alpha * lastRows + (1 - alpha) * baselineRows;
+        }
+        return change;
+    }
+
+    public synchronized boolean isRegressed() {
+        return regressed;
+    }
+
+    public synchronized Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("windows", windows);
+        map.put("baselineP95Ms", millis(baselineP95Micros));
+        map.put("lastP95Ms", millis(lastP95Micros));
+        map.put("baselineRows", round(baselineRows));
+        map.put("lastRows", round(lastRows));
+        map.put("regressed", regressed);
+        if (regressed) {
+            map.put("regressedFromMs", millis(regressedFromMicros));
+            map.put("regressedSince", regressedSince);
+        }
+        return map;
+    }
+
+    static double millis(double micros) {
+        return Math.round(micros / 10.0) / 100.0;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+
+    /**
+     * 基线状态的变化
+     */
+    static final class Change {
+
+        enum Kind {
+            /**
+             * 窗口 p95 超过基线的 ratio 倍
+             */
+            REGRESSED,
+            /**
+             * 窗口 p95 回到退化前的基线附近
+             */
+            RECOVERED,
+            /**
+             * 耗时没有回落，基线已经跟上了新的耗时
+             */
+            ADOPTED
+        }
+
+        final Kind kind;
+
+        final double baselineP95Micros;
+
+        final double baselineRows;
+
+        final long p95Micros;
+
+        final double rows;
+
+        Change(Kind kind, double baselineP95Micros, double baselineRows, long p95Micros, double rows) {
+            this.kind = kind;
+            this.baselineP95Micros = baselineP95Micros;
+            this.baselineRows = baselineRows;
+            this.p95Micros = p95Micros;
+            this.rows = rows;
+        }
+    }
+}
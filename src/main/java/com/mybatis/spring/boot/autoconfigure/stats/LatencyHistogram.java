@@ -0,0 +1,186 @@
+package com.mybatis.spring.boot.autoconfigure.stats;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 耗时分布，按微秒对数线性分桶：小于 32us 每微秒一个桶，之后每个 2 的幂区间再分为 32 个桶，
+ * 相对误差不超过 1/32，最大约 9.5 小时(更大的值记入最后一个桶)，固定 992 个桶，写入无锁，分桶见 {@link LogLinearBuckets}。
+ * 桶的划分与实例无关，多个实例的分布按桶相加即可合并，见 {@link #encode()}
+ *
+ * @author spafka
+ */
+public class LatencyHistogram {
+
+    static final LogLinearBuckets LAYOUT = new LogLinearBuckets(5, (1L << 35) - 1);
+
+    static final int BUCKETS = LAYOUT.buckets();
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long nanos) {
+        counts.incrementAndGet(LAYOUT.index(TimeUnit.NANOSECONDS.toMicros(nanos)));
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @param quantile 0 ~ 1
+     * @return 分位数的近似值(纳秒)，没有数据时为 0
+     */
+    public long quantileNanos(double quantile) {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        return TimeUnit.MICROSECONDS.toNanos(LAYOUT.quantileMicros(snapshot, count, quantile));
+    }
+
+    /**
+     * 各个桶的计数，下标即桶的编号
+     */
+    public long[] counts() {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return snapshot;
+    }
+
+    /**
+     * 把另一组桶计数({@link #counts()})加到当前分布上，合并多个分布时分位数仍然准确
+     */
+    public void add(long[] counts) {
+        for (int i = 0; i < Math.min(BUCKETS, counts.length); i++) {
+            if (counts[i] != 0) {
+                this.counts.addAndGet(i, counts[i]);
+            }
+        }
+    }
+
+    public void merge(LatencyHistogram other) {
+        add(other.counts());
+    }
+
+    /**
+     * 紧凑编码，只包含非零的桶，一般几十个字节
+     */
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeCounts(out, counts());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException 不是 {@link #encode()} 的结果
+     */
+    public static LatencyHistogram decode(byte[] encoded) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded))) {
+            histogram.add(readCounts(in));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("malformed latency histogram", e);
+        }
+        return histogram;
+    }
+
+    /**
+     * 桶个数、非零桶个数，然后是每个非零桶和上一个非零桶的编号差值以及计数，都是 varint
+     */
+    public static void writeCounts(DataOutput out, long[] counts) throws IOException {
+        int nonZero = 0;
+        for (long count : counts) {
+            if (count != 0) {
+                nonZero++;
+            }
+        }
+        Varints.write(out, counts.length);
+        Varints.write(out, nonZero);
+        int previous = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                Varints.write(out, i - previous);
+                Varints.write(out, counts[i]);
+                previous = i;
+            }
+        }
+    }
+
+    /**
+     * 桶个数不同说明分桶方式不同，不能合并
+     */
+    public static long[] readCounts(DataInput in) throws IOException {
+        long length = Varints.read(in);
+        if (length != BUCKETS) {
+            throw new IOException("latency histogram has " + length + " buckets, expected " + BUCKETS);
+        }
+        long[] counts = new long[BUCKETS];
+        long nonZero = Varints.read(in);
+        long index = 0;
+        for (long i = 0; i < nonZero; i++) {
+            index += Varints.read(in);
+            if (index >= BUCKETS) {
+                throw new IOException("latency histogram bucket " + index + " out of range");
+            }
+            counts[(int) index] = Varints.read(in);
+        }
+        return counts;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    /**
+     * count 以及 p50 / p90 / p95 / p99 / p999 / max(毫秒)
+     */
+    public Map<String, Object> toMap() {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        int last = -1;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+            if (snapshot[i] > 0) {
+                last = i;
+            }
+        }
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("count", count);
+        map.put("p50Ms", millis(LAYOUT.quantileMicros(snapshot, count, 0.5)));
+        map.put("p90Ms", millis(LAYOUT.quantileMicros(snapshot, count, 0.9)));
+        map.put("p95Ms", millis(LAYOUT.quantileMicros(snapshot, count, 0.95)));
+        map.put("p99Ms", millis(LAYOUT.quantileMicros(snapshot, count, 0.99)));
+        map.put("p999Ms", millis(LAYOUT.quantileMicros(snapshot, count, 0.999)));
+        map.put("maxMs", last < 0 ? 0 : millis(LAYOUT.valueMicros(last)));
+        return map;
+    }
+
+    private static double millis(long micros) {
+        return Math.round(micros / 10.0) / 100.0;
+    }
+}
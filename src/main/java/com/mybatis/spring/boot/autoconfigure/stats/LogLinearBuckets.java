@@ -0,0 +1,84 @@
+package com.mybatis.spring.boot.autoconfigure.stats;
+
+/**
+ * 微秒的对数线性分桶：小于 2^subBits 每微秒一个桶，之后每个 2 的幂区间再分为 2^subBits 个桶，
+ * 相对误差不超过 1/2^subBits，大于 maxMicros 的值记入最后一个桶。
+ * {@link LatencyHistogram} 和 {@link QuantileSketch} 共用，只是精度不同
+ *
+ * @author spafka
+ */
+final class LogLinearBuckets {
+
+    private final int subBits;
+
+    private final int subCount;
+
+    private final long maxMicros;
+
+    private final int buckets;
+
+    LogLinearBuckets(int subBits, long maxMicros) {
+        this.subBits = subBits;
+        this.subCount = 1 << subBits;
+        this.maxMicros = maxMicros;
+        this.buckets = index(maxMicros) + 1;
+    }
+
+    int buckets() {
+        return buckets;
+    }
+
+    int index(long micros) {
+        long value = Math.max(0, Math.min(micros, maxMicros));
+        if (value < subCount) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - subBits;
+        return (shift + 1) * subCount + (int) (value >>> shift) - subCount;
+    }
+
+    /**
+     * 桶的下界(微秒)
+     */
+    long lowerMicros(int index) {
+        if (index < subCount) {
+            return index;
+        }
+        int shift = index / subCount - 1;
+        long sub = index % subCount + subCount;
+        return sub << shift;
+    }
+
+    /**
+     * 桶的代表值(微秒)，取区间中点
+     */
+    long valueMicros(int index) {
+        if (index < subCount) {
+            return index;
+        }
+        int shift = index / subCount - 1;
+        return lowerMicros(index) + ((1L << shift) >> 1);
+    }
+
+    /**
+     * @param counts   各个桶的计数
+     * @param count    counts 的总和
+     * @param quantile 0 ~ 1
+     * @return 分位数所在桶的代表值(微秒)，没有数据时为 0
+     */
+    long quantileMicros(long[] counts, long count, double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return valueMicros(i);
+            }
+        }
+        return valueMicros(counts.length - 1);
+    }
+}
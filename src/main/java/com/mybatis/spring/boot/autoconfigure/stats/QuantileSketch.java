@@ -0,0 +1,76 @@
+package com.mybatis.spring.boot.autoconfigure.stats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个分位数的流式估算：微秒按 2 的幂区间再分 4 个桶计数(见 {@link LogLinearBuckets}，共 120 个 int，相对误差不超过 12.5%)，
+ * 每 halfLife 次记录所有计数减半，分布跟随最近的执行；分位数每 16 次记录重新计算一次并缓存，写入无锁
+ *
+ * @author spafka
+ */
+public class QuantileSketch {
+
+    static final LogLinearBuckets LAYOUT = new LogLinearBuckets(2, Integer.MAX_VALUE);
+
+    static final int BUCKETS = LAYOUT.buckets();
+
+    private static final int REFRESH_INTERVAL = 16;
+
+    private final AtomicIntegerArray counts = new AtomicIntegerArray(BUCKETS);
+
+    private final AtomicLong records = new AtomicLong();
+
+    private final double quantile;
+
+    private final int halfLife;
+
+    private volatile long quantileMicros;
+
+    /**
+     * @param quantile 0 ~ 1
+     * @param halfLife 每记录多少次计数减半
+     */
+    public QuantileSketch(double quantile, int halfLife) {
+        this.quantile = quantile;
+        this.halfLife = halfLife;
+    }
+
+    public void record(long nanos) {
+        counts.incrementAndGet(LAYOUT.index(TimeUnit.NANOSECONDS.toMicros(nanos)));
+        long n = records.incrementAndGet();
+        if (halfLife > 0 && n % halfLife == 0) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts.getAndUpdate(i, count -> count >> 1);
+            }
+        }
+        if (n % REFRESH_INTERVAL == 0 || n < REFRESH_INTERVAL) {
+            quantileMicros = compute();
+        }
+    }
+
+    /**
+     * 记录过的总次数，不受减半影响
+     */
+    public long getRecords() {
+        return records.get();
+    }
+
+    /**
+     * 最近一次计算的分位数(纳秒)
+     */
+    public long getQuantileNanos() {
+        return TimeUnit.MICROSECONDS.toNanos(quantileMicros);
+    }
+
+    private long compute() {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        return LAYOUT.quantileMicros(snapshot, count, quantile);
+    }
+}
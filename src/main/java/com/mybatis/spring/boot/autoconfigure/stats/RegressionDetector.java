@@ -0,0 +1,76 @@
+package com.mybatis.spring.boot.autoconfigure.stats;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 耗时退化检测：每 windowSize 次执行计算一次窗口 p95，和 {@link LatencyBaseline} 中的 EWMA 基线比较，
+ * 超过基线的 ratio 倍(并且至少多出 minMillis)时告警一次，之后回落或者基线跟上新的耗时时各输出一条日志，
+ * 不会每个窗口都告警。前 warmupWindows 个窗口只建立基线
+ *
+ * @author spafka
+ */
+@Slf4j
+@Getter
+public class RegressionDetector {
+
+    private final double ratio;
+
+    private final int windowSize;
+
+    /**
+     * EWMA 系数，越大基线跟随越快
+     */
+    private final double alpha;
+
+    private final int warmupWindows;
+
+    private final long minDeltaMicros;
+
+    public RegressionDetector(double ratio, int windowSize, double alpha, int warmupWindows, long minMillis) {
+        if (ratio <= 1 || windowSize <= 0 || alpha <= 0 || alpha > 1) {
+            throw new IllegalArgumentException("ratio must be greater than 1, windowSize positive and alpha in (0, 1]");
+        }
+        this.ratio = ratio;
+        this.windowSize = windowSize;
+        this.alpha = alpha;
+        this.warmupWindows = Math.max(1, warmupWindows);
+        this.minDeltaMicros = TimeUnit.MILLISECONDS.toMicros(minMillis);
+    }
+
+    /**
+     * @param fingerprint 动态 sql 的指纹，静态 sql 为空
+     * @param rows        行数，未知时小于 0
+     */
+    public void record(StatementStats stats, String fingerprint, long nanos, long rows) {
+        LatencyBaseline baseline = stats.baseline(fingerprint == null ? stats.getId() : fingerprint);
+        if (baseline == null || !baseline.record(nanos, rows, windowSize)) {
+            return;
+        }
+        LatencyBaseline.Change change = baseline.closeWindow(windowSize, ratio, alpha, warmupWindows, minDeltaMicros);
+        if (change == null) {
+            return;
+        }
+        String sql = fingerprint == null ? "" : "\n" + fingerprint;
+        switch (change.kind) {
+            case REGRESSED:
+                log.warn("[{}] {} p95 regressed to {}ms over the last {} executions, baseline {}ms, rows {} (baseline {}){}",
+                        stats.getDataSource(), stats.getId(), LatencyBaseline.millis(change.p95Micros), windowSize,
+                        LatencyBaseline.millis(change.baselineP95Micros), rows(change.rows), rows(change.baselineRows), sql);
+                break;
+            case RECOVERED:
+                log.info("[{}] {} p95 recovered to {}ms, baseline {}ms{}", stats.getDataSource(), stats.getId(),
+                        LatencyBaseline.millis(change.p95Micros), LatencyBaseline.millis(change.baselineP95Micros), sql);
+                break;
+            default:
+                log.info("[{}] {} p95 {}ms adopted as the new baseline{}", stats.getDataSource(), stats.getId(),
+                        LatencyBaseline.millis(change.p95Micros), sql);
+        }
+    }
+
+    private static String rows(double rows) {
+        return rows < 0 ? "-" : String.valueOf(Math.round(rows * 10) / 10.0);
+    }
+}
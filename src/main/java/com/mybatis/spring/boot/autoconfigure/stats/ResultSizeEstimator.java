@@ -0,0 +1,233 @@
+package com.mybatis.spring.boot.autoconfigure.stats;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 估算查询结果 List 占用的堆内存，只用于发现造成 GC 压力的查询，不追求精确：
+ * <ul>
+ * <li>按 64 位 jvm、开启压缩指针计算：对象头 12 字节、引用 4 字节、数组头 16 字节，8 字节对齐</li>
+ * <li>每个类的浅大小和引用字段只计算一次并缓存</li>
+ * <li>结果较多时只均匀抽样 sampleSize 个元素，按平均值乘以行数估算</li>
+ * <li>每个元素最多向下遍历 maxDepth 层</li>
+ * </ul>
+ *
+ * @author spafka
+ */
+public class ResultSizeEstimator {
+
+    private static final int OBJECT_HEADER = 12;
+
+    private static final int ARRAY_HEADER = 16;
+
+    private static final int REFERENCE = 4;
+
+    private static final ClassLayout OPAQUE = new ClassLayout(OBJECT_HEADER + REFERENCE, new Field[0]);
+
+    private final int sampleSize;
+
+    private final int maxDepth;
+
+    private final ConcurrentMap<Class<?>, ClassLayout> layouts = new ConcurrentHashMap<>();
+
+    public ResultSizeEstimator(int sampleSize, int maxDepth) {
+        this.sampleSize = Math.max(1, sampleSize);
+        this.maxDepth = maxDepth;
+    }
+
+    public long estimate(List<?> result) {
+        int size = result.size();
+        // ArrayList 本身以及其中的数组
+        long listBytes = align(OBJECT_HEADER + 2 * 4 + REFERENCE) + align(ARRAY_HEADER + (long) size * REFERENCE);
+        if (size == 0) {
+            return listBytes;
+        }
+        int samples = Math.min(size, sampleSize);
+        long sampledBytes = 0;
+        for (int i = 0; i < samples; i++) {
+            // 均匀抽样，size <= sampleSize 时即为全部元素
+            Object element = result.get((int) ((long) i * size / samples));
+            sampledBytes += sizeOf(element, 0, Collections.newSetFromMap(new IdentityHashMap<>()));
+        }
+        return listBytes + sampledBytes * size / samples;
+    }
+
+    /**
+     * eg: 512B、3.2KB、1.5MB
+     */
+    public static String format(long bytes) {
+        if (bytes < 1024) {
+            return bytes + "B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format(Locale.ROOT, "%.1fKB", bytes / 1024.0);
+        }
+        return String.format(Locale.ROOT, "%.1fMB", bytes / (1024.0 * 1024));
+    }
+
+    private long sizeOf(Object value, int depth, Set<Object> visited) {
+        if (value == null || value instanceof Enum || value instanceof Class || !visited.add(value)) {
+            return 0;
+        }
+        if (value instanceof String) {
+            return align(OBJECT_HEADER + 4 + 4 + REFERENCE) + align(ARRAY_HEADER + 2L * ((String) value).length());
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+            return knownNumberSize(value);
+        }
+        if (value instanceof Date) {
+            return align(OBJECT_HEADER + 8 + REFERENCE);
+        }
+        Class<?> clazz = value.getClass();
+        if (clazz.isArray()) {
+            return arraySize(value, depth, visited);
+        }
+        if (depth >= maxDepth) {
+            return layout(clazz).shallowSize;
+        }
+        if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            // 按 ArrayList / HashSet 的节点近似
+            long bytes = align(OBJECT_HEADER + 4 * 4 + REFERENCE) + align(ARRAY_HEADER + (long) collection.size() * REFERENCE);
+            for (Object element : collection) {
+                bytes += sizeOf(element, depth + 1, visited);
+            }
+            return bytes;
+        }
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            // HashMap 本身、table、每个 Node(hash, key, value, next)
+            long bytes = align(OBJECT_HEADER + 4 * 4 + 4 * REFERENCE) + align(ARRAY_HEADER + (long) map.size() * 2 * REFERENCE)
+                    + (long) map.size() * align(OBJECT_HEADER + 4 + 3 * REFERENCE);
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                bytes += sizeOf(entry.getKey(), depth + 1, visited) + sizeOf(entry.getValue(), depth + 1, visited);
+            }
+            return bytes;
+        }
+        ClassLayout layout = layout(clazz);
+        long bytes = layout.shallowSize;
+        for (Field field : layout.referenceFields) {
+            try {
+                bytes += sizeOf(field.get(value), depth + 1, visited);
+            } catch (IllegalAccessException e) {
+                // 忽略无法访问的字段
+            }
+        }
+        return bytes;
+    }
+
+    private long arraySize(Object array, int depth, Set<Object> visited) {
+        int length = Array.getLength(array);
+        Class<?> componentType = array.getClass().getComponentType();
+        if (componentType.isPrimitive()) {
+            return align(ARRAY_HEADER + (long) length * primitiveSize(componentType));
+        }
+        long bytes = align(ARRAY_HEADER + (long) length * REFERENCE);
+        if (depth < maxDepth) {
+            for (int i = 0; i < length; i++) {
+                bytes += sizeOf(Array.get(array, i), depth + 1, visited);
+            }
+        }
+        return bytes;
+    }
+
+    private static long knownNumberSize(Object value) {
+        if (value instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) value;
+            // BigDecimal + BigInteger + int[]，小数值的 BigDecimal 只有 intCompact，这里按有 BigInteger 估算
+            return align(OBJECT_HEADER + 8 + 4 + 4 + 2 * REFERENCE) + bigIntegerSize(decimal.unscaledValue());
+        }
+        if (value instanceof BigInteger) {
+            return bigIntegerSize((BigInteger) value);
+        }
+        if (value instanceof Long || value instanceof Double) {
+            return align(OBJECT_HEADER + 8);
+        }
+        return align(OBJECT_HEADER + 4);
+    }
+
+    private static long bigIntegerSize(BigInteger value) {
+        return align(OBJECT_HEADER + 6 * 4 + REFERENCE) + align(ARRAY_HEADER + 4L * ((value.bitLength() + 31) / 32));
+    }
+
+    private ClassLayout layout(Class<?> clazz) {
+        ClassLayout layout = layouts.get(clazz);
+        if (layout == null) {
+            layout = layouts.computeIfAbsent(clazz, ResultSizeEstimator::computeLayout);
+        }
+        return layout;
+    }
+
+    private static ClassLayout computeLayout(Class<?> clazz) {
+        long size = OBJECT_HEADER;
+        List<Field> referenceFields = new ArrayList<>();
+        // jdk 内部类的字段在 java 9 以后无法访问，只计算浅大小
+        boolean accessible = !clazz.getName().startsWith("java.");
+        try {
+            for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    Class<?> type = field.getType();
+                    if (type.isPrimitive()) {
+                        size += primitiveSize(type);
+                    } else {
+                        size += REFERENCE;
+                        if (accessible) {
+                            field.setAccessible(true);
+                            referenceFields.add(field);
+                        }
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            // SecurityException 或 java 9 以后的 InaccessibleObjectException
+            return OPAQUE;
+        }
+        return new ClassLayout(align(size), referenceFields.toArray(new Field[0]));
+    }
+
+    private static int primitiveSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == int.class || type == float.class) {
+            return 4;
+        }
+        if (type == short.class || type == char.class) {
+            return 2;
+        }
+        return 1;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    private static final class ClassLayout {
+
+        private final long shallowSize;
+
+        private final Field[] referenceFields;
+
+        private ClassLayout(long shallowSize, Field[] referenceFields) {
+            this.shallowSize = shallowSize;
+            this.referenceFields = referenceFields;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.mybatis.spring.boot.autoconfigure.stats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 最近一段时间的统计：slots 个 1 秒的桶组成环形数组，eg: 900 个桶覆盖最近 15 分钟。
+ * 进入新的一秒时用 CAS 把过期的桶整个替换为新桶，不加锁；和替换同时写入旧桶的少量记录会丢失。
+ * 桶在第一次使用时才创建，很少执行的 statement 只占用数组本身
+ *
+ * @author spafka
+ */
+public class SlidingWindow {
+
+    private final AtomicReferenceArray<Bucket> buckets;
+
+    private final int slots;
+
+    public SlidingWindow(int slots) {
+        this.slots = slots;
+        this.buckets = new AtomicReferenceArray<>(slots);
+    }
+
+    public void record(long nanos, boolean error) {
+        bucket(currentSecond()).record(nanos, error);
+    }
+
+    private Bucket bucket(long second) {
+        int index = (int) (second % slots);
+        while (true) {
+            Bucket bucket = buckets.get(index);
+            if (bucket != null && bucket.second == second) {
+                return bucket;
+            }
+            if (bucket != null && bucket.second > second) {
+                // 时钟回拨，记入当前的桶
+                return bucket;
+            }
+            Bucket fresh = new Bucket(second);
+            if (buckets.compareAndSet(index, bucket, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    /**
+     * 汇总最近 seconds 秒(包括当前这一秒)，超过 slots 时按 slots 计算
+     *
+     * @throws IllegalArgumentException seconds 不是正数
+     */
+    public Map<String, Object> window(int seconds) {
+        if (seconds <= 0) {
+            throw new IllegalArgumentException("seconds must be positive: " + seconds);
+        }
+        int span = Math.min(seconds, slots);
+        long now = currentSecond();
+        long count = 0;
+        long errors = 0;
+        long totalNanos = 0;
+        long maxNanos = 0;
+        for (int i = 0; i < slots; i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket != null && bucket.second > now - span && bucket.second <= now) {
+                count += bucket.count;
+                errors += bucket.errors;
+                totalNanos += bucket.totalNanos;
+                maxNanos = Math.max(maxNanos, bucket.maxNanos);
+            }
+        }
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("count", count);
+        map.put("perSecond", Math.round(count * 100.0 / span) / 100.0);
+        map.put("errors", errors);
+        map.put("errorRate", count == 0 ? 0 : Math.round(errors * 10000.0 / count) / 10000.0);
+        map.put("avgMs", count == 0 ? 0 : Math.round(totalNanos / (double) count / 1000) / 1000.0);
+        map.put("maxMs", Math.round(maxNanos / 1000.0) / 1000.0);
+        return map;
+    }
+
+    /**
+     * 最近 1、5、15 分钟，超出覆盖范围的窗口不输出；不足 1 分钟时只输出整个环，eg: 30s
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        if (slots < 60) {
+            map.put(slots + "s", window(slots));
+            return map;
+        }
+        map.put("1m", window(60));
+        if (slots >= 300) {
+            map.put("5m", window(300));
+        }
+        if (slots >= 900) {
+            map.put("15m", window(900));
+        }
+        return map;
+    }
+
+    private static long currentSecond() {
+        return TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+    }
+
+    private static final class Bucket {
+
+        private static final AtomicLongFieldUpdater<Bucket> COUNT = AtomicLongFieldUpdater.newUpdater(Bucket.class, "count");
+
+        private static final AtomicLongFieldUpdater<Bucket> ERRORS = AtomicLongFieldUpdater.newUpdater(Bucket.class, "errors");
+
+        private static final AtomicLongFieldUpdater<Bucket> TOTAL_NANOS = AtomicLongFieldUpdater.newUpdater(Bucket.class, "totalNanos");
+
+        private static final AtomicLongFieldUpdater<Bucket> MAX_NANOS = AtomicLongFieldUpdater.newUpdater(Bucket.class, "maxNanos");
+
+        private final long second;
+
+        private volatile long count;
+
+        private volatile long errors;
+
+        private volatile long totalNanos;
+
+        private volatile long maxNanos;
+
+        Bucket(long second) {
+            this.second = second;
+        }
+
+        void record(long nanos, boolean error) {
+            COUNT.incrementAndGet(this);
+            TOTAL_NANOS.addAndGet(this, nanos);
+            if (error) {
+                ERRORS.incrementAndGet(this);
+            }
+            long max = maxNanos;
+            while (nanos > max && !MAX_NANOS.compareAndSet(this, max, nanos)) {
+                max = maxNanos;
+            }
+        }
+    }
+}
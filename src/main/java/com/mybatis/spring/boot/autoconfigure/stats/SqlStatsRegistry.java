@@ -0,0 +1,101 @@
+package com.mybatis.spring.boot.autoconfigure.stats;
+
+import org.apache.ibatis.builder.annotation.ProviderSqlSource;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.scripting.xmltags.DynamicSqlSource;
+
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+/**
+ * 按数据源、statement id 汇总的 sql 统计
+ *
+ * @author spafka
+ */
+public class SqlStatsRegistry {
+
+    private final ConcurrentMap<String, ConcurrentMap<String, StatementStats>> dataSources = new ConcurrentHashMap<>();
+
+    private final int maxShapes;
+
+    private final int windowSlots;
+
+    private final boolean histogram;
+
+    /**
+     * @param windowSlots 每个 statement 最近统计覆盖的秒数，0 表示不统计
+     * @param histogram   是否为每个 statement 记录耗时分布，统计快照需要
+     */
+    public SqlStatsRegistry(int maxShapes, int windowSlots, boolean histogram) {
+        this.maxShapes = maxShapes;
+        this.windowSlots = windowSlots;
+        this.histogram = histogram;
+    }
+
+    public StatementStats stats(String dataSource, MappedStatement ms) {
+        ConcurrentMap<String, StatementStats> statements = dataSources.get(dataSource);
+        if (statements == null) {
+            statements = dataSources.computeIfAbsent(dataSource, k -> new ConcurrentHashMap<>());
+        }
+        StatementStats stats = statements.get(ms.getId());
+        if (stats == null) {
+            stats = statements.computeIfAbsent(ms.getId(), id -> new StatementStats(dataSource, id, isDynamic(ms.getSqlSource()), maxShapes, windowSlots, histogram));
+        }
+        return stats;
+    }
+
+    public Collection<StatementStats> getStatements() {
+        return dataSources.values().stream().flatMap(m -> m.values().stream()).collect(Collectors.toList());
+    }
+
+    public void reset() {
+        dataSources.clear();
+    }
+
+    /**
+     * 每个数据源下按 sql 生成总耗时倒序输出，最先看到的就是拼 sql 最耗 cpu 的语句
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        dataSources.forEach((dataSource, statements) -> {
+            Map<String, Object> byId = new LinkedHashMap<>();
+            List<StatementStats> sorted = statements.values().stream()
+                    .sorted(Comparator.comparingLong((StatementStats s) -> s.getBuild().getTotalNanos()).reversed())
+                    .collect(Collectors.toList());
+            sorted.forEach(s -> byId.put(s.getId(), s.toMap()));
+            map.put(dataSource, byId);
+        });
+        return map;
+    }
+
+    /**
+     * 每个数据源下最近 seconds 秒执行过的 statement，按执行次数倒序
+     */
+    public Map<String, Object> recent(int seconds) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        dataSources.forEach((dataSource, statements) -> {
+            List<Map.Entry<String, Map<String, Object>>> windows = statements.values().stream()
+                    .filter(s -> s.getWindow() != null)
+                    .map(s -> new AbstractMap.SimpleImmutableEntry<>(s.getId(), s.getWindow().window(seconds)))
+                    .filter(e -> (Long) e.getValue().get("count") > 0)
+                    .sorted(Comparator.comparingLong((Map.Entry<String, Map<String, Object>> e) -> (Long) e.getValue().get("count")).reversed())
+                    .collect(Collectors.toList());
+            Map<String, Object> byId = new LinkedHashMap<>();
+            windows.forEach(e -> byId.put(e.getKey(), e.getValue()));
+            map.put(dataSource, byId);
+        });
+        return map;
+    }
+
+    private static boolean isDynamic(SqlSource sqlSource) {
+        return sqlSource instanceof DynamicSqlSource || sqlSource instanceof ProviderSqlSource;
+    }
+}
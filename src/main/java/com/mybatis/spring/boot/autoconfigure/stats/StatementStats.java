@@ -0,0 +1,172 @@
+package com.mybatis.spring.boot.autoconfigure.stats;
+
+import lombok.Getter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个 MappedStatement 的统计：sql 生成(getBoundSql)耗时与执行耗时分开计算，
+ * 动态 sql 额外记录生成出来的不同 sql 形态
+ *
+ * @author spafka
+ */
+@Getter
+public class StatementStats {
+
+    private final String dataSource;
+
+    private final String id;
+
+    /**
+     * 是否为动态 sql(DynamicSqlSource / ProviderSqlSource)
+     */
+    private final boolean dynamic;
+
+    /**
+     * MappedStatement.getBoundSql 耗时
+     */
+    private final Timing build = new Timing();
+
+    /**
+     * 执行耗时，不含 getBoundSql
+     */
+    private final Timing execute = new Timing();
+
+    /**
+     * 执行耗时的分布(992 个桶，约 8KB)，只在开启统计快照时记录，否则为空
+     */
+    private final LatencyHistogram latency;
+
+    private final LongAdder errors = new LongAdder();
+
+    /**
+     * sql 指纹({@link com.mybatis.spring.boot.autoconfigure.sql.SqlFingerprint}) -> 执行耗时，最多保留 maxShapes 个，
+     * foreach 生成的不同长度的 IN 列表属于同一个指纹
+     */
+    private final ConcurrentMap<String, Timing> shapes = new ConcurrentHashMap<>();
+
+    /**
+     * 超出 maxShapes 之后未被记录的 sql 形态的执行次数
+     */
+    private final LongAdder shapeOverflow = new LongAdder();
+
+    /**
+     * 耗时基线，开启 mybatis.stats.regression.enabled 后记录：静态 sql 以 statement id 为 key，
+     * 动态 sql 以指纹为 key，最多 maxShapes 个
+     */
+    private final ConcurrentMap<String, LatencyBaseline> baselines = new ConcurrentHashMap<>();
+
+    /**
+     * 查询结果的估算内存大小，开启 mybatis.result-size.enabled 后记录
+     */
+    private final LongAdder resultCount = new LongAdder();
+
+    private final LongAdder resultBytes = new LongAdder();
+
+    private final AtomicLong maxResultBytes = new AtomicLong();
+
+    /**
+     * 最近一段时间的执行次数、耗时和错误，windowSlots 为 0 时为空
+     */
+    private final SlidingWindow window;
+
+    private final int maxShapes;
+
+    /**
+     * @param windowSlots 最近统计覆盖的秒数，0 表示不统计
+     * @param histogram   是否记录耗时分布
+     */
+    public StatementStats(String dataSource, String id, boolean dynamic, int maxShapes, int windowSlots, boolean histogram) {
+        this.dataSource = dataSource;
+        this.id = id;
+        this.dynamic = dynamic;
+        this.maxShapes = maxShapes;
+        this.window = windowSlots > 0 ? new SlidingWindow(windowSlots) : null;
+        this.latency = histogram ? new LatencyHistogram() : null;
+    }
+
+    /**
+     * 耗时分布的桶计数，不记录分布时全部为 0
+     */
+    public long[] latencyCounts() {
+        return latency == null ? new long[LatencyHistogram.BUCKETS] : latency.counts();
+    }
+
+    /**
+     * @return 该指纹的执行耗时，超出 maxShapes 时返回 null
+     */
+    public Timing shape(String fingerprint) {
+        Timing timing = shapes.get(fingerprint);
+        if (timing == null) {
+            if (shapes.size() >= maxShapes) {
+                shapeOverflow.increment();
+                return null;
+            }
+            timing = shapes.computeIfAbsent(fingerprint, k -> new Timing());
+        }
+        return timing;
+    }
+
+    /**
+     * @return 该 key 的耗时基线，超出 maxShapes 时返回 null
+     */
+    public LatencyBaseline baseline(String key) {
+        LatencyBaseline baseline = baselines.get(key);
+        if (baseline == null) {
+            if (baselines.size() >= maxShapes) {
+                return null;
+            }
+            baseline = baselines.computeIfAbsent(key, k -> new LatencyBaseline());
+        }
+        return baseline;
+    }
+
+    public void recordResultBytes(long bytes) {
+        resultCount.increment();
+        resultBytes.add(bytes);
+        long max = maxResultBytes.get();
+        while (bytes > max && !maxResultBytes.compareAndSet(max, bytes)) {
+            max = maxResultBytes.get();
+        }
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("dynamic", dynamic);
+        map.put("build", build.toMap());
+        map.put("execute", execute.toMap());
+        if (latency != null) {
+            map.put("latency", latency.toMap());
+        }
+        map.put("errors", errors.sum());
+        if (window != null) {
+            map.put("recent", window.toMap());
+        }
+        long results = resultCount.sum();
+        if (results > 0) {
+            Map<String, Object> resultSize = new LinkedHashMap<>();
+            resultSize.put("count", results);
+            resultSize.put("totalBytes", resultBytes.sum());
+            resultSize.put("avgBytes", resultBytes.sum() / results);
+            resultSize.put("maxBytes", maxResultBytes.get());
+            map.put("resultSize", resultSize);
+        }
+        if (dynamic) {
+            Map<String, Object> shapeTimings = new LinkedHashMap<>();
+            shapes.forEach((fingerprint, timing) -> shapeTimings.put(fingerprint, timing.toMap()));
+            map.put("shapes", shapeTimings);
+            map.put("shapeOverflow", shapeOverflow.sum());
+        }
+        if (!baselines.isEmpty()) {
+            Map<String, Object> baselineMap = new LinkedHashMap<>();
+            baselines.forEach((key, baseline) -> baselineMap.put(key, baseline.toMap()));
+            map.put("baselines", baselineMap);
+        }
+        return map;
+    }
+}
@@ -0,0 +1,56 @@
+package com.mybatis.spring.boot.autoconfigure.stats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一组耗时的累计值：次数、总耗时、最大耗时，写入无锁
+ *
+ * @author spafka
+ */
+public class Timing {
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        count.increment();
+        totalNanos.add(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public double getAvgMillis() {
+        long c = getCount();
+        return c == 0 ? 0 : getTotalNanos() / (double) c / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("count", getCount());
+        map.put("totalMs", TimeUnit.NANOSECONDS.toMillis(getTotalNanos()));
+        map.put("avgMs", Math.round(getAvgMillis() * 1000) / 1000.0);
+        map.put("maxMs", TimeUnit.NANOSECONDS.toMillis(getMaxNanos()));
+        return map;
+    }
+}
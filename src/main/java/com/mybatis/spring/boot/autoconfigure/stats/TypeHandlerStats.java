@@ -0,0 +1,98 @@
+package com.mybatis.spring.boot.autoconfigure.stats;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * TypeHandler 的 setParameter / getResult 耗时，按数据源、TypeHandler 类型、statement id 三级汇总
+ *
+ * @author spafka
+ */
+public class TypeHandlerStats {
+
+    /**
+     * 不在任何 statement 中调用时(例如手动调用 TypeHandler)使用的 statement id
+     */
+    public static final String NO_STATEMENT = "-";
+
+    private final ConcurrentMap<String, ConcurrentMap<String, Handler>> dataSources = new ConcurrentHashMap<>();
+
+    /**
+     * 每个被包装的 TypeHandler 在创建时取一次，执行时只需要按 statement id 查找
+     */
+    public Handler handler(String dataSource, String handlerClass) {
+        return dataSources.computeIfAbsent(dataSource, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(handlerClass, k -> new Handler());
+    }
+
+    public void reset() {
+        dataSources.values().forEach(handlers -> handlers.values().forEach(h -> h.statements.clear()));
+    }
+
+    /**
+     * 每个数据源下 TypeHandler 按总耗时倒序，每个 TypeHandler 下再列出各 statement
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        dataSources.forEach((dataSource, handlers) -> {
+            Map<String, Object> byHandler = new LinkedHashMap<>();
+            handlers.entrySet().stream()
+                    .filter(e -> !e.getValue().statements.isEmpty())
+                    .sorted(Comparator.comparingLong((Map.Entry<String, Handler> e) -> totalNanos(e.getValue().statements)).reversed())
+                    .forEach(e -> {
+                        Map<String, Object> byStatement = new LinkedHashMap<>();
+                        e.getValue().statements.forEach((id, calls) -> byStatement.put(id, calls.toMap()));
+                        byHandler.put(e.getKey(), byStatement);
+                    });
+            map.put(dataSource, byHandler);
+        });
+        return map;
+    }
+
+    private static long totalNanos(Map<String, Calls> byStatement) {
+        long total = 0;
+        for (Calls calls : byStatement.values()) {
+            total += calls.setParameter.getTotalNanos() + calls.getResult.getTotalNanos();
+        }
+        return total;
+    }
+
+    public static class Handler {
+
+        private final ConcurrentMap<String, Calls> statements = new ConcurrentHashMap<>();
+
+        public Calls calls(String statementId) {
+            String key = statementId == null ? NO_STATEMENT : statementId;
+            Calls calls = statements.get(key);
+            if (calls == null) {
+                calls = statements.computeIfAbsent(key, k -> new Calls());
+            }
+            return calls;
+        }
+    }
+
+    public static class Calls {
+
+        private final Timing setParameter = new Timing();
+
+        private final Timing getResult = new Timing();
+
+        public Timing getSetParameter() {
+            return setParameter;
+        }
+
+        public Timing getGetResult() {
+            return getResult;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("setParameter", setParameter.toMap());
+            map.put("getResult", getResult.toMap());
+            return map;
+        }
+    }
+}
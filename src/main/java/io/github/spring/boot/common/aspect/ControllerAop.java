@@ -19,6 +19,7 @@ package io.github.spring.boot.common.aspect;
 
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mybatis.spring.boot.autoconfigure.SqlRequestSummary;
 import io.github.spring.boot.common.aspect.view.ObjectView;
 import io.vavr.Tuple2;
 import io.vavr.collection.Stream;
@@ -139,12 +140,17 @@ public class ControllerAop {
         });
 
 
-        // 调用目标方法
+        // 调用目标方法，期间执行的 sql 由 sql 拦截器汇总到 SqlRequestSummary
         Object result = null;
+        SqlRequestSummary sqlSummary = SqlRequestSummary.begin();
+        sqlSummary.setEndpoint(clazz + "." + method.getName());
         try {
             result = point.proceed();
         } catch (Throwable e) {
             throwable = e;
+        } finally {
+            log.info("{}.{} {}", clazz, method.getName(), sqlSummary.summaryLine());
+            sqlSummary.end();
         }
         if (throwable == null) {
             log.info("{} \n {}  \n {}",sb, new ObjectView(objects, 10).draw(), new ObjectView(result, 10).draw());
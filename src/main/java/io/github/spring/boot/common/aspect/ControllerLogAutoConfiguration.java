@@ -2,8 +2,10 @@ package io.github.spring.boot.common.aspect;
 
 import org.aspectj.lang.annotation.Aspect;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
 import org.springframework.web.util.ContentCachingRequestWrapper;
 
@@ -24,6 +26,20 @@ public class ControllerLogAutoConfiguration {
         }
     }
 
+    /**
+     * 响应头中加入 Server-Timing，前端、压测工具不看日志也能知道数据库耗时
+     */
+    @Configuration
+    @ConditionalOnExpression("${controller.server-timing:false}")
+    public class ServerTiming {
+
+        @Bean
+        public FilterRegistrationBean<ServerTimingFilter> serverTimingFilter() {
+            FilterRegistrationBean<ServerTimingFilter> registration = new FilterRegistrationBean<>(new ServerTimingFilter());
+            registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+            return registration;
+        }
+    }
 
     @Order(1)//设置该类在spring容器中的加载顺序
     @Aspect
@@ -0,0 +1,102 @@
+package io.github.spring.boot.common.aspect;
+
+import com.mybatis.spring.boot.autoconfigure.SqlRequestSummary;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * 在响应头中加入 Server-Timing：数据库耗时、sql 条数、请求总耗时，
+ * eg: Server-Timing: db;dur=12.35, sql;desc="3", total;dur=40.12
+ * <p>
+ * 响应头必须在响应提交前写入，所以在第一次获取输出流时写入，此时 controller 已经执行完毕
+ *
+ * @author spafka
+ */
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+    public static final String SERVER_TIMING = "Server-Timing";
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        SqlRequestSummary summary = SqlRequestSummary.begin();
+        if (summary.getEndpoint() == null) {
+            summary.setEndpoint(request.getMethod() + " " + request.getRequestURI());
+        }
+        ServerTimingResponse timingResponse = new ServerTimingResponse(response, summary);
+        try {
+            filterChain.doFilter(request, timingResponse);
+        } finally {
+            timingResponse.addServerTiming();
+            summary.end();
+        }
+    }
+
+    static String serverTiming(SqlRequestSummary summary) {
+        return String.format(Locale.ROOT, "db;dur=%.2f, sql;desc=\"%d\", total;dur=%.2f",
+                summary.getDbNanos() / 1e6, summary.getStatements(), summary.getElapsedNanos() / 1e6);
+    }
+
+    private static class ServerTimingResponse extends HttpServletResponseWrapper {
+
+        private final SqlRequestSummary summary;
+
+        private boolean added;
+
+        ServerTimingResponse(HttpServletResponse response, SqlRequestSummary summary) {
+            super(response);
+            this.summary = summary;
+        }
+
+        void addServerTiming() {
+            if (!added && !isCommitted()) {
+                added = true;
+                addHeader(SERVER_TIMING, serverTiming(summary));
+            }
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            addServerTiming();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            addServerTiming();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            addServerTiming();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            addServerTiming();
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            addServerTiming();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            addServerTiming();
+            super.sendRedirect(location);
+        }
+    }
+}
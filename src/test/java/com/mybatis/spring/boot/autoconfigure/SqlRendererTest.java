@@ -0,0 +1,80 @@
+package com.mybatis.spring.boot.autoconfigure;
+
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.session.Configuration;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author spafka
+ */
+public class SqlRendererTest {
+
+    /**
+     * 按 findElisions 的结果把省略的部分替换为 /* n more *&#47;，并在末尾记下跳过的占位符个数
+     */
+    private static String elide(String sql, int keep) {
+        StringBuilder sb = new StringBuilder();
+        int from = 0;
+        int placeholders = 0;
+        for (SqlRenderer.Elision elision : SqlRenderer.findElisions(sql, keep)) {
+            sb.append(sql, from, elision.start).append(" /* ").append(elision.elements).append(" more */ ");
+            from = elision.end;
+            placeholders += elision.placeholders;
+        }
+        return sb.append(sql.substring(from)).append(" -- ").append(placeholders).toString();
+    }
+
+    @Test
+    public void findElisions() {
+        String[][] cases = {
+                // 不超过 2 * keep 个元素的列表不省略
+                {"select * from t where id in (1, 2)", "select * from t where id in (1, 2) -- 0"},
+                {"select * from t where id in (?, ?, ?, ?, ?, ?)", "select * from t where id in (?, /* 4 more */  ?) -- 4"},
+                {"select * from t where id in (select id from u where a in (1, 2, 3, 4, 5))",
+                        "select * from t where id in (select id from u where a in (1, /* 3 more */  5)) -- 0"},
+                {"select * from t where (a, b) in ((?, ?), (?, ?), (?, ?), (?, ?))",
+                        "select * from t where (a, b) in ((?, ?), /* 2 more */  (?, ?)) -- 4"},
+                {"select * from t where f(a, b, c, d) in (1, 2)", "select * from t where f(a, b, c, d) in (1, 2) -- 0"},
+                {"insert into t(a, b) values (?, ?), (?, ?), (?, ?), (?, ?)",
+                        "insert into t(a, b) values (?, ?), /* 2 more */  (?, ?) -- 4"},
+                {"insert into t(a) values (?), (?), (?) on duplicate key update a = values(a)",
+                        "insert into t(a) values (?), /* 1 more */  (?) on duplicate key update a = values(a) -- 1"},
+                // VALUES 中嵌套的 IN 列表在被省略的行中
+                {"insert into t(a) values ((select 1 where 1 in (1, 2, 3))), (?), (?)",
+                        "insert into t(a) values ((select 1 where 1 in (1, /* 1 more */  3))), /* 1 more */  (?) -- 1"},
+        };
+        for (String[] c : cases) {
+            assertEquals(c[0], c[1], elide(c[0], 1));
+        }
+    }
+
+    @Test
+    public void render() {
+        Configuration configuration = new Configuration();
+        StringBuilder sql = new StringBuilder("select * from t where name = ? and id in (");
+        List<ParameterMapping> mappings = new ArrayList<>();
+        Map<String, Object> parameters = new HashMap<>();
+        mappings.add(new ParameterMapping.Builder(configuration, "name", Object.class).build());
+        parameters.put("name", "it's");
+        for (int i = 0; i < 100; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+            mappings.add(new ParameterMapping.Builder(configuration, "p" + i, Object.class).build());
+            parameters.put("p" + i, i);
+        }
+        sql.append(") and a = ?");
+        mappings.add(new ParameterMapping.Builder(configuration, "a", Object.class).build());
+        parameters.put("a", -1);
+        BoundSql boundSql = new BoundSql(configuration, sql.toString(), mappings, parameters);
+
+        assertEquals("select * from t where name = 'it''s' and id in (0, 1, /* 96 more */ 98, 99) and a = -1",
+                new SqlRenderer(configuration, boundSql, 2).render(false));
+    }
+}
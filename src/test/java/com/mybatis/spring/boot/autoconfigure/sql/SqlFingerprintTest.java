@@ -0,0 +1,71 @@
+package com.mybatis.spring.boot.autoconfigure.sql;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author spafka
+ */
+public class SqlFingerprintTest {
+
+    private static void check(String[][] cases) {
+        for (String[] c : cases) {
+            assertEquals(c[0], c[1], SqlFingerprint.of(c[0]));
+        }
+    }
+
+    @Test
+    public void literals() {
+        check(new String[][]{
+                {"SELECT * FROM t WHERE id = 1 AND name = 'a'", "select * from t where id = ? and name = ?"},
+                {"select  *\n from t -- comment\n where id=?", "select * from t where id = ?"},
+                {"select * from t where name = \"a\" and t.\"x\" = 1", "select * from t where name = ? and t.\"x\" = ?"},
+                {"select `Name` from t", "select `Name` from t"},
+        });
+    }
+
+    @Test
+    public void signs() {
+        check(new String[][]{
+                {"select * from t where a = -1", "select * from t where a = ?"},
+                {"select * from t where a=-1.5e3", "select * from t where a = ?"},
+                {"select * from t where a = b - 1", "select * from t where a = b - ?"},
+                {"select -1, +2 from t limit -1", "select ?, ? from t limit ?"},
+                {"select * from t where a between -1 and +1", "select * from t where a between ? and ?"},
+        });
+    }
+
+    @Test
+    public void inList() {
+        check(new String[][]{
+                {"select * from t where id in (1)", "select * from t where id in(?+)"},
+                {"select * from t where id in (1, 2, 3)", "select * from t where id in(?+)"},
+                {"select * from t where id in (?, -2, 'a', \"b\")", "select * from t where id in(?+)"},
+                {"select * from t where (a, b) in ((1, 2), (3, 4))", "select * from t where(a, b) in(?+)"},
+                {"select * from t where id in (1, 2) and b in (3)", "select * from t where id in(?+) and b in(?+)"},
+        });
+    }
+
+    @Test
+    public void inListRewind() {
+        check(new String[][]{
+                {"select * from t where id in (select id from u where a = 1)",
+                        "select * from t where id in(select id from u where a = ?)"},
+                {"select * from t where id in (1, a)", "select * from t where id in(?, a)"},
+                {"select * from t where id in ()", "select * from t where id in()"},
+                {"select * from t where id in (1, 2", "select * from t where id in(?, ?"},
+        });
+    }
+
+    @Test
+    public void values() {
+        check(new String[][]{
+                {"insert into t(a, b) values (1, 'x')", "insert into t(a, b) values(?, ?)"},
+                {"insert into t(a, b) values (1, 'x'), (2, 'y'), (3, 'z')", "insert into t(a, b) values(?, ?)"},
+                {"insert into t(a, b) values (1, f(2)), (2, f(3))", "insert into t(a, b) values(?, f(?))"},
+                {"insert into t(a) values (1), (2) on duplicate key update a = values(a)",
+                        "insert into t(a) values(?) on duplicate key update a = values(a)"},
+        });
+    }
+}
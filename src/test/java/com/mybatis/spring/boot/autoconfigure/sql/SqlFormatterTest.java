@@ -0,0 +1,72 @@
+package com.mybatis.spring.boot.autoconfigure.sql;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author spafka
+ */
+public class SqlFormatterTest {
+
+    private static void check(String[][] cases) {
+        for (String[] c : cases) {
+            assertEquals(c[0], c[1], SqlFormatter.format(c[0]));
+        }
+    }
+
+    @Test
+    public void star() {
+        check(new String[][]{
+                {"select * from t", "select *\nfrom t"},
+                {"select t.*, count(*) from t where a = 2 * 3", "select t.*, count(*)\nfrom t\nwhere a = 2 * 3"},
+        });
+    }
+
+    @Test
+    public void conditions() {
+        check(new String[][]{
+                {"select * from t where a = 1 and b = 2 or c = 3", "select *\nfrom t\nwhere a = 1\n\tand b = 2\n\tor c = 3"},
+                {"select * from t where a between 1 and 2 and b = 3", "select *\nfrom t\nwhere a between 1 and 2\n\tand b = 3"},
+                {"select case when a = 1 and b = 2 then 1 else 0 end from t",
+                        "select case when a = 1 and b = 2 then 1 else 0 end\nfrom t"},
+                {"select * from t where id = 1 for update", "select *\nfrom t\nwhere id = 1 for update"},
+        });
+    }
+
+    @Test
+    public void subquery() {
+        check(new String[][]{
+                {"select id, name from t where a = 1 and b in (select b from u) order by id",
+                        "select id, name\nfrom t\nwhere a = 1\n\tand b in (\n\t\tselect b\n\t\tfrom u\n\t)\norder by id"},
+        });
+    }
+
+    @Test
+    public void join() {
+        check(new String[][]{
+                {"select * from t left join u on t.id = u.id", "select *\nfrom t\nleft join u on t.id = u.id"},
+                {"select left(name, 3) from t", "select left(name, 3)\nfrom t"},
+        });
+    }
+
+    @Test
+    public void valuesAndSet() {
+        check(new String[][]{
+                {"insert into t(a, b) values (1, 2), (3, 4)", "insert into t(a, b)\nvalues (1, 2), (3, 4)"},
+                {"insert into kv(k, value) values (1, 2) on duplicate key update value = values(value)",
+                        "insert into kv(k, value)\nvalues (1, 2) on duplicate key update value = values(value)"},
+                {"select value from kv where k = 1", "select value\nfrom kv\nwhere k = 1"},
+                {"update t set a = 1, b = 2 where id = 3", "update t\nset a = 1, b = 2\nwhere id = 3"},
+        });
+    }
+
+    @Test
+    public void compact() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        SqlFormatter.format("select  *\n\tfrom t  where a=1", sb, false);
+        assertEquals("select * from t where a=1", sb.toString());
+    }
+}